@@ -0,0 +1,56 @@
+package com.nvankempen.csc375.benchmarks;
+
+import com.nvankempen.csc375.utils.BitPackedArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitPackedArrayBenchmark {
+
+    // 16x16 and 25x25 boards.
+    @Param({"256:5", "625:5"})
+    public String shape;
+
+    private BitPackedArray array;
+    private int n;
+
+    @Setup
+    public void setup() {
+        final String[] parts = shape.split(":");
+        n = Integer.parseInt(parts[0]);
+        array = new BitPackedArray(n, Integer.parseInt(parts[1]));
+
+        for (int i = 0; i < n; ++i) array.set(i, i % 17);
+    }
+
+    @Benchmark
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < n; ++i) sum += array.get(i);
+        return sum;
+    }
+
+    @Benchmark
+    public long getUnchecked() {
+        long sum = 0;
+        for (int i = 0; i < n; ++i) sum += array.getUnchecked(i);
+        return sum;
+    }
+
+    @Benchmark
+    public BitPackedArray set() {
+        for (int i = 0; i < n; ++i) array.set(i, (i + 1) % 17);
+        return array;
+    }
+
+    @Benchmark
+    public BitPackedArray with() {
+        return array.with(n / 2, 3);
+    }
+}
@@ -0,0 +1,42 @@
+package com.nvankempen.csc375.benchmarks;
+
+import com.nvankempen.csc375.Sudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Scanner;
+import java.util.stream.Collectors;
+
+/**
+ * The checked-in benchmark puzzles, under src/jmh/resources/puzzles. One puzzle per line, in the same format as the
+ * files the GUI loads.
+ */
+public enum Corpus {
+    EASY("easy"),
+    HARD("hard"),
+    UNSOLVABLE("unsolvable");
+
+    private final String name;
+
+    Corpus(String name) {
+        this.name = name;
+    }
+
+    public List<Sudoku> load() {
+        final String resource = "/puzzles/" + name + ".txt";
+
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Corpus.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .map(line -> Sudoku.read(new Scanner(line)))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.nvankempen.csc375.benchmarks;
+
+import com.nvankempen.csc375.Sudoku;
+import com.nvankempen.csc375.SudokuSolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves the whole corpus once per operation with the fork/join solver, on a pool of each parallelism.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelSolverBenchmark {
+
+    @Param({"EASY", "HARD", "UNSOLVABLE"})
+    public Corpus corpus;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private List<Sudoku> puzzles;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        puzzles = corpus.load();
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void parallelSolve(Blackhole blackhole) {
+        for (final Sudoku sudoku : puzzles) blackhole.consume(pool.invoke(new SudokuSolver(sudoku, null)));
+    }
+}
@@ -0,0 +1,43 @@
+package com.nvankempen.csc375.benchmarks;
+
+import com.nvankempen.csc375.DancingLinksSolver;
+import com.nvankempen.csc375.Sudoku;
+import com.nvankempen.csc375.SudokuSolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves the whole corpus once per operation, on the calling thread. See {@link ParallelSolverBenchmark} for the
+ * fork/join solver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+
+    @Param({"EASY", "HARD", "UNSOLVABLE"})
+    public Corpus corpus;
+
+    private List<Sudoku> puzzles;
+
+    @Setup
+    public void setup() {
+        puzzles = corpus.load();
+    }
+
+    @Benchmark
+    public void sequentialSolve(Blackhole blackhole) {
+        for (final Sudoku sudoku : puzzles) blackhole.consume(SudokuSolver.sequentialSolve(sudoku));
+    }
+
+    @Benchmark
+    public void dancingLinks(Blackhole blackhole) {
+        for (final Sudoku sudoku : puzzles) blackhole.consume(DancingLinksSolver.solve(sudoku));
+    }
+}
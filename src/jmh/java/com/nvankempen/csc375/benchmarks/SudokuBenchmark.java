@@ -0,0 +1,66 @@
+package com.nvankempen.csc375.benchmarks;
+
+import com.nvankempen.csc375.Sudoku;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SudokuBenchmark {
+
+    @Param({"EASY", "HARD"})
+    public Corpus corpus;
+
+    private Sudoku sudoku;
+    private int i;
+    private int j;
+
+    @Setup
+    public void setup() {
+        sudoku = corpus.load().get(0);
+
+        // The first empty cell, where the solvers would look.
+        outer:
+        for (i = 0; i < sudoku.size(); ++i) {
+            for (j = 0; j < sudoku.size(); ++j) {
+                if (!sudoku.isSet(i, j)) break outer;
+            }
+        }
+    }
+
+    @Benchmark
+    public Sudoku set() {
+        return sudoku.set(i, j, Long.numberOfTrailingZeros(sudoku.candidates(i, j)) + 1);
+    }
+
+    @Benchmark
+    public List<Long> whatCanWeSetAt() {
+        return sudoku.whatCanWeSetAt(i, j);
+    }
+
+    @Benchmark
+    public long candidates() {
+        return sudoku.candidates(i, j);
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return sudoku.isValid();
+    }
+
+    @Benchmark
+    public void candidatesEverywhere(Blackhole blackhole) {
+        for (int x = 0; x < sudoku.size(); ++x) {
+            for (int y = 0; y < sudoku.size(); ++y) {
+                blackhole.consume(sudoku.candidates(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.nvankempen.csc375;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless batch solving. Puzzles are streamed from a {@link PuzzleReader} and solved concurrently on a shared
+ * ForkJoinPool: several puzzles are in flight at once, and each of them is split further by {@link SudokuSolver}.
+ * Results are written in input order, one per line, followed by a throughput and latency summary. Puzzles that were
+ * already solved, or are equivalent to one that was, are answered from a {@link SolutionCache}.
+ */
+public final class BatchSolver {
+    private final ForkJoinPool pool;
+    private final int window;
+    private final SolutionCache cache;
+
+    /**
+     * @param pool   The pool to solve puzzles on.
+     * @param window The maximum number of puzzles in flight, bounds memory use on large inputs.
+     * @param cache  The cache to look puzzles up in before solving them. May be null.
+     */
+    public BatchSolver(ForkJoinPool pool, int window, SolutionCache cache) {
+        this.pool = pool;
+        this.window = window;
+        this.cache = cache;
+    }
+
+    public BatchSolver() {
+        this(ForkJoinPool.commonPool(), 4 * ForkJoinPool.getCommonPoolParallelism(), new SolutionCache(SolutionCache.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Solves every puzzle of the input. Each result is printed as soon as it and every puzzle before it are done,
+     * either as a single line board or as "unsolvable". The summary goes to the given summary stream.
+     */
+    public void run(PuzzleReader reader, PrintStream out, PrintStream summary) throws IOException, InterruptedException {
+        final Tally tally = new Tally();
+
+        final long start = System.nanoTime();
+
+        OrderedWindow.run(pool, window, () -> {
+            final Sudoku puzzle = reader.next();
+            return puzzle == null ? null : () -> solve(puzzle);
+        }, result -> {
+            out.println(result.solution == null ? "unsolvable" : result.solution.toLine());
+            tally.add(result);
+        });
+
+        out.flush();
+        final int count = tally.count;
+        final int solved = tally.solved;
+        final long elapsed = System.nanoTime() - start;
+
+        final long[] sorted = Arrays.copyOf(tally.latencies, count);
+        Arrays.sort(sorted);
+
+        summary.printf("%d puzzles, %d solved, %d unsolvable in %.3f seconds (%.1f puzzles/s). %n",
+                count, solved, count - solved, elapsed / 1e9, count / (elapsed / 1e9));
+        if (count > 0) summary.printf("Latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms. %n",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[count - 1] / 1e6);
+        if (cache != null) summary.printf("Cache: %d hits, %d misses. %n", cache.hits(), cache.misses());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        final int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Runs on a worker of the pool, so the solver forks its subtasks into the same pool.
+     */
+    private Result solve(Sudoku sudoku) {
+        final long start = System.nanoTime();
+        final Sudoku solution = cache == null
+                ? new SudokuSolver(sudoku, null).invoke()
+                : cache.solve(sudoku, puzzle -> new SudokuSolver(puzzle, null).invoke());
+        return new Result(solution, System.nanoTime() - start);
+    }
+
+    private static final class Tally {
+        private long[] latencies = new long[1024];
+        private int count = 0;
+        private int solved = 0;
+
+        private void add(Result result) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, 2 * count);
+            latencies[count++] = result.latency;
+            if (result.solution != null) ++solved;
+        }
+    }
+
+    private static final class Result {
+        private final Sudoku solution;
+        private final long latency;
+
+        private Result(Sudoku solution, long latency) {
+            this.solution = solution;
+            this.latency = latency;
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.nvankempen.csc375;
 
 public interface Constants {
+    // Default order of new boards, the actual order is a property of each Sudoku.
     int N = 4;
-    int BITS = 5;
-    int THRESHOLD = 1;
+    int SURPLUS_THRESHOLD = 3;
     int CLUSTER_THRESHOLD = 30;
-    int MAX_PACKET_SIZE = 500;
+    // Payload of a datagram, kept under a typical Ethernet MTU so batches are never fragmented.
+    int MAX_PACKET_SIZE = 1400;
 }
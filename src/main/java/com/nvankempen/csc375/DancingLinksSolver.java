@@ -0,0 +1,173 @@
+package com.nvankempen.csc375;
+
+/**
+ * Solves a Sudoku as an exact cover problem, using Knuth's Algorithm X with dancing links.
+ * There is one column per constraint (each cell is filled, each value appears once per row, column and box)
+ * and one row per candidate placement. The links live in flat int arrays rather than node objects.
+ */
+public final class DancingLinksSolver {
+    private final Geometry geometry;
+    private final int columns;
+
+    private final int[] left;
+    private final int[] right;
+    private final int[] up;
+    private final int[] down;
+    private final int[] column;
+    private final int[] row;
+    private final int[] count;
+
+    private final int[] solution;
+    private int nodes;
+
+    private DancingLinksSolver(Sudoku sudoku) {
+        geometry = sudoku.geometry();
+        columns = 4 * geometry.cells();
+        solution = new int[geometry.cells()];
+
+        final int size = geometry.size();
+
+        int rows = 0;
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                rows += sudoku.isSet(i, j) ? 1 : Long.bitCount(sudoku.candidates(i, j));
+            }
+        }
+
+        final int length = 1 + columns + 4 * rows;
+        left = new int[length];
+        right = new int[length];
+        up = new int[length];
+        down = new int[length];
+        column = new int[length];
+        row = new int[length];
+        count = new int[1 + columns];
+
+        // Node 0 is the root, the next nodes are the column headers.
+        for (int c = 0; c <= columns; ++c) {
+            left[c] = c - 1;
+            right[c] = c + 1;
+            up[c] = c;
+            down[c] = c;
+            column[c] = c;
+        }
+        left[0] = columns;
+        right[columns] = 0;
+        nodes = columns + 1;
+
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                if (sudoku.isSet(i, j)) {
+                    addRow(i, j, (int) sudoku.get(i, j));
+                } else {
+                    for (long candidates = sudoku.candidates(i, j); candidates != 0; candidates &= candidates - 1)
+                        addRow(i, j, Long.numberOfTrailingZeros(candidates) + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A solution to the given Sudoku, or null if it has none.
+     */
+    public static Sudoku solve(Sudoku sudoku) {
+        // Duplicate givens cover a column twice, the matrix would only find that out by exhausting the search.
+        if (!sudoku.isValid()) return null;
+
+        final DancingLinksSolver solver = new DancingLinksSolver(sudoku);
+        if (!solver.search(0)) return null;
+
+        final Geometry geometry = sudoku.geometry();
+        final Sudoku result = sudoku.copy();
+
+        for (final int placement : solver.solution) {
+            final int cell = placement / geometry.size();
+            final int i = geometry.row(cell);
+            final int j = geometry.column(cell);
+            if (!result.isSet(i, j)) result.place(i, j, placement % geometry.size() + 1);
+        }
+
+        return result;
+    }
+
+    private void addRow(int i, int j, int v) {
+        final int size = geometry.size();
+        final int cell = geometry.cell(i, j);
+        final int b = geometry.box(cell);
+        final int first = nodes;
+        final int id = size * cell + v - 1;
+
+        addNode(1 + cell, id);
+        addNode(1 + size * size + size * i + v - 1, id);
+        addNode(1 + 2 * size * size + size * j + v - 1, id);
+        addNode(1 + 3 * size * size + size * b + v - 1, id);
+
+        for (int k = 0; k < 4; ++k) {
+            left[first + k] = first + (k + 3) % 4;
+            right[first + k] = first + (k + 1) % 4;
+        }
+    }
+
+    private void addNode(int c, int id) {
+        final int node = nodes++;
+
+        column[node] = c;
+        row[node] = id;
+        up[node] = up[c];
+        down[node] = c;
+        down[up[c]] = node;
+        up[c] = node;
+        ++count[c];
+    }
+
+    private boolean search(int depth) {
+        if (right[0] == 0) return true;
+
+        // Branch on the column with the fewest rows left.
+        int c = right[0];
+        for (int j = right[c]; j != 0; j = right[j]) {
+            if (count[j] < count[c]) c = j;
+        }
+
+        if (count[c] == 0) return false;
+
+        cover(c);
+        for (int r = down[c]; r != c; r = down[r]) {
+            solution[depth] = row[r];
+            for (int j = right[r]; j != r; j = right[j]) cover(column[j]);
+
+            if (search(depth + 1)) return true;
+
+            for (int j = left[r]; j != r; j = left[j]) uncover(column[j]);
+        }
+        uncover(c);
+
+        return false;
+    }
+
+    private void cover(int c) {
+        right[left[c]] = right[c];
+        left[right[c]] = left[c];
+
+        for (int i = down[c]; i != c; i = down[i]) {
+            for (int j = right[i]; j != i; j = right[j]) {
+                down[up[j]] = down[j];
+                up[down[j]] = up[j];
+                --count[column[j]];
+            }
+        }
+    }
+
+    private void uncover(int c) {
+        for (int i = up[c]; i != c; i = up[i]) {
+            for (int j = left[i]; j != i; j = left[j]) {
+                ++count[column[j]];
+                down[up[j]] = j;
+                up[down[j]] = j;
+            }
+        }
+
+        right[left[c]] = c;
+        left[right[c]] = c;
+    }
+}
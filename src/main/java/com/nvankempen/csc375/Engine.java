@@ -0,0 +1,55 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.sockets.MainSocket;
+
+/**
+ * The available solving engines. Every engine takes a Sudoku and returns a solution, or null if there is none.
+ */
+public enum Engine {
+    SEQUENTIAL("Sequential") {
+        @Override
+        public Sudoku solve(Sudoku sudoku, MainSocket socket) {
+            return SudokuSolver.sequentialSolve(sudoku);
+        }
+    },
+
+    PARALLEL("Parallel") {
+        @Override
+        public Sudoku solve(Sudoku sudoku, MainSocket socket) {
+            return new SudokuSolver(sudoku, null).invoke();
+        }
+    },
+
+    CLUSTER("Cluster") {
+        @Override
+        public Sudoku solve(Sudoku sudoku, MainSocket socket) {
+            return new SudokuSolver(sudoku, socket).invoke();
+        }
+    },
+
+    DANCING_LINKS("Dancing Links") {
+        @Override
+        public Sudoku solve(Sudoku sudoku, MainSocket socket) {
+            return DancingLinksSolver.solve(sudoku);
+        }
+    };
+
+    private final String label;
+
+    Engine(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param socket The socket to distribute work through, only used by the cluster engine. May be null.
+     */
+    public abstract Sudoku solve(Sudoku sudoku, MainSocket socket);
+
+    public static Engine fromName(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,51 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.heuristics.BranchingHeuristic;
+import com.nvankempen.csc375.utils.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Node expansion shared by the fork/join searches, {@link SudokuSolver} and {@link SolutionCounter}. The root check is
+ * used by {@link IterativeSolver} as well.
+ */
+final class Expansion {
+    private Expansion() {
+
+    }
+
+    /**
+     * Prepares the root of a search in place. Duplicate givens are invisible to the masks propagation works on, they
+     * are rejected first.
+     *
+     * @param sudoku A board owned by the caller, see {@link Sudoku#place(int, int, long)}.
+     * @return false if the board cannot be solved.
+     */
+    static boolean root(Sudoku sudoku) {
+        return sudoku.isValid() && Propagator.propagate(sudoku);
+    }
+
+    /**
+     * Branches on the cell the heuristic selects, one child per candidate. Children are propagated before being
+     * returned, the ones that turn out to be dead ends are dropped.
+     *
+     * @param token No more children are built once it is cancelled.
+     */
+    static List<Sudoku> children(Sudoku sudoku, BranchingHeuristic heuristic, CancellationToken token) {
+        final int cell = heuristic.select(sudoku);
+        final int i = sudoku.geometry().row(cell);
+        final int j = sudoku.geometry().column(cell);
+        long possibilities = sudoku.candidates(i, j);
+
+        final List<Sudoku> children = new ArrayList<>(Long.bitCount(possibilities));
+
+        for (; possibilities != 0 && !token.isCancelled(); possibilities &= possibilities - 1) {
+            final long possibility = Long.numberOfTrailingZeros(possibilities) + 1;
+            final Sudoku copy = sudoku.set(i, j, possibility);
+            if (Propagator.propagate(copy)) children.add(copy);
+        }
+
+        return children;
+    }
+}
@@ -0,0 +1,189 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.heuristics.BranchingHeuristic;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Generates puzzles with a unique solution. Each puzzle starts from a random complete grid, its diagonal boxes filled
+ * with random permutations and the rest filled by the sequential solver, then givens are removed in a random order as
+ * long as the puzzle keeps a single solution. Puzzles are generated concurrently on a shared ForkJoinPool, one task
+ * each, so every worker is busy with its own puzzle.
+ * <p>
+ * Uniqueness is checked by counting solutions up to two, sequentially and within a node budget: a few near-minimal
+ * puzzles take orders of magnitude longer to count than the rest. A removal whose check runs out of budget is undone.
+ * Puzzle k only depends on the seed and k, so the same seed always produces the same corpus.
+ */
+public final class Generator {
+
+    public enum Difficulty {
+        /**
+         * Half the cells are given, naked and hidden singles alone solve the puzzle.
+         */
+        EASY,
+        /**
+         * Naked and hidden singles alone solve the puzzle, no given can be removed without losing that.
+         */
+        MEDIUM,
+        /**
+         * No given can be removed without losing the unique solution, as far as the node budget can tell.
+         */
+        HARD;
+
+        public static Difficulty fromName(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+
+    // Givens an easy puzzle keeps, as a fraction of its cells.
+    private static final double EASY_GIVENS = 0.5;
+
+    // Nodes a uniqueness check may expand, per cell of the board.
+    private static final long NODES_PER_CELL = 16;
+
+    private final Geometry geometry;
+    private final Difficulty difficulty;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private final int window;
+
+    /**
+     * @param pool   The pool to generate puzzles on.
+     * @param window The maximum number of puzzles in flight.
+     */
+    public Generator(int order, Difficulty difficulty, long seed, ForkJoinPool pool, int window) {
+        this.geometry = Geometry.of(order);
+        this.difficulty = difficulty;
+        this.seed = seed;
+        this.pool = pool;
+        this.window = window;
+    }
+
+    public Generator(int order, Difficulty difficulty, long seed) {
+        this(order, difficulty, seed, ForkJoinPool.commonPool(), 2 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Generates the given number of puzzles, printed one per line in the format {@link PuzzleReader} reads. The
+     * summary goes to the given summary stream.
+     */
+    public void run(int count, PrintStream out, PrintStream summary) throws InterruptedException {
+        final int[] next = {0};
+        final long[] givens = {0};
+
+        final long start = System.nanoTime();
+
+        OrderedWindow.run(pool, window, () -> {
+            if (next[0] == count) return null;
+            final int index = next[0]++;
+            return () -> generate(index);
+        }, puzzle -> {
+            out.println(puzzle.toLine());
+            givens[0] += geometry.cells() - puzzle.remaining();
+        });
+
+        out.flush();
+        final long elapsed = System.nanoTime() - start;
+
+        summary.printf("%d %s puzzles, %.1f givens on average, in %.3f seconds (%.1f puzzles/s). %n",
+                count, difficulty.name().toLowerCase(), count == 0 ? 0 : (double) givens[0] / count,
+                elapsed / 1e9, count / (elapsed / 1e9));
+    }
+
+    /**
+     * @return The index-th puzzle of this generator's corpus.
+     */
+    public Sudoku generate(int index) {
+        final SplittableRandom random = new SplittableRandom(seed + index * 0x9E3779B97F4A7C15L);
+        final long[][] grid = grid(random);
+
+        final int[] cells = new int[geometry.cells()];
+        for (int cell = 0; cell < cells.length; ++cell) cells[cell] = cell;
+        shuffle(cells, random);
+
+        final int keep = difficulty == Difficulty.EASY ? (int) Math.ceil(EASY_GIVENS * cells.length) : 0;
+
+        // Puzzles that singles solve have a single solution, checking that is much cheaper than counting. Counting
+        // only starts once singles are stuck, past that the puzzle never becomes solvable by singles again.
+        final int givens = remove(grid, cells, cells.length, keep, false);
+        if (difficulty == Difficulty.HARD) remove(grid, cells, givens, keep, true);
+
+        return new Sudoku(grid);
+    }
+
+    /**
+     * Removes givens in the order of the given cells, undoing every removal that loses the unique solution.
+     *
+     * @param search False to only keep puzzles that singles alone solve, true to count solutions.
+     * @return The number of givens left.
+     */
+    private int remove(long[][] grid, int[] cells, int givens, int keep, boolean search) {
+        final int size = geometry.size();
+
+        for (int k = 0; k < cells.length && givens > keep; ++k) {
+            final int i = cells[k] / size;
+            final int j = cells[k] % size;
+            final long value = grid[i][j];
+            if (value == 0) continue;
+
+            grid[i][j] = 0;
+            final Sudoku puzzle = new Sudoku(grid);
+            if (search ? unique(puzzle) : solvedBySingles(puzzle)) --givens;
+            else grid[i][j] = value;
+        }
+
+        return givens;
+    }
+
+    private static boolean solvedBySingles(Sudoku puzzle) {
+        final Sudoku copy = puzzle.copy();
+        return Propagator.propagate(copy) && copy.remaining() == 0;
+    }
+
+    private boolean unique(Sudoku puzzle) {
+        final long[] solutions = {0};
+        final boolean done = IterativeSolver.enumerate(puzzle, BranchingHeuristic.DEFAULT, NODES_PER_CELL * geometry.cells(),
+                solution -> ++solutions[0] < 2);
+        return done && solutions[0] == 1;
+    }
+
+    /**
+     * The diagonal boxes do not share any unit, any permutation of the values fits in each of them.
+     */
+    private long[][] grid(SplittableRandom random) {
+        final int order = geometry.order();
+        final int size = geometry.size();
+
+        while (true) {
+            final long[][] grid = new long[size][size];
+            final int[] values = new int[size];
+            for (int v = 0; v < size; ++v) values[v] = v + 1;
+
+            for (int box = 0; box < order; ++box) {
+                shuffle(values, random);
+                for (int k = 0; k < size; ++k) grid[box * order + k / order][box * order + k % order] = values[k];
+            }
+
+            // Some seeds lead to a grid that cannot be completed, a new one is drawn then.
+            final Sudoku solution = SudokuSolver.sequentialSolve(new Sudoku(grid));
+            if (solution == null) continue;
+
+            for (int i = 0; i < size; ++i)
+                for (int j = 0; j < size; ++j)
+                    grid[i][j] = solution.get(i, j);
+
+            return grid;
+        }
+    }
+
+    private static void shuffle(int[] array, SplittableRandom random) {
+        for (int k = array.length - 1; k > 0; --k) {
+            final int other = random.nextInt(k + 1);
+            final int swap = array[k];
+            array[k] = array[other];
+            array[other] = swap;
+        }
+    }
+}
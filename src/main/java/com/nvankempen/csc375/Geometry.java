@@ -0,0 +1,141 @@
+package com.nvankempen.csc375;
+
+/**
+ * Shape of a board of a given order: an order N board has N^2 rows, columns and boxes, and N^4 cells.
+ * Cells are indexed as N^2 * i + j. Units are indexed rows first, then columns, then boxes.
+ * Everything is precomputed in lookup tables so hot paths never divide by a runtime order.
+ */
+public final class Geometry {
+    /**
+     * Values are stored as bits of a long, so a board cannot hold more than 63 values.
+     */
+    public static final int MAX_ORDER = 7;
+
+    private static final Geometry[] CACHE = new Geometry[MAX_ORDER + 1];
+
+    static {
+        // The orders we actually run, so they never go through the lazy path.
+        CACHE[3] = new Geometry(3);
+        CACHE[4] = new Geometry(4);
+        CACHE[5] = new Geometry(5);
+    }
+
+    private final int order;
+    private final int size;
+    private final int cells;
+    private final int bits;
+    private final long all;
+
+    private final int[] rows;
+    private final int[] columns;
+    private final int[] boxes;
+    private final int[] units;
+
+    private Geometry(int order) {
+        this.order = order;
+        this.size = order * order;
+        this.cells = size * size;
+        this.bits = Long.SIZE - Long.numberOfLeadingZeros(size);
+        this.all = (1L << size) - 1;
+
+        rows = new int[cells];
+        columns = new int[cells];
+        boxes = new int[cells];
+        units = new int[3 * cells];
+
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                final int cell = size * i + j;
+                final int box = (i / order) * order + j / order;
+                final int k = (i % order) * order + j % order;
+
+                rows[cell] = i;
+                columns[cell] = j;
+                boxes[cell] = box;
+
+                units[size * i + j] = cell;
+                units[cells + size * j + i] = cell;
+                units[2 * cells + size * box + k] = cell;
+            }
+        }
+    }
+
+    public static Geometry of(int order) {
+        if (order < 1 || order > MAX_ORDER)
+            throw new IllegalArgumentException("Unsupported order: " + order);
+
+        // All fields are final, so a racy read of a cached instance is safe.
+        final Geometry geometry = CACHE[order];
+        if (geometry != null) return geometry;
+
+        synchronized (CACHE) {
+            if (CACHE[order] == null) CACHE[order] = new Geometry(order);
+            return CACHE[order];
+        }
+    }
+
+    /**
+     * @return The smallest order whose boards have at least the given number of cells.
+     */
+    public static Geometry fitting(int cells) {
+        int order = 1;
+        while (order < MAX_ORDER && order * order * order * order < cells) ++order;
+        return of(order);
+    }
+
+    public int order() {
+        return order;
+    }
+
+    /**
+     * @return The number of rows, columns, boxes and values.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int cells() {
+        return cells;
+    }
+
+    /**
+     * @return The number of bits needed to store a value.
+     */
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * @return A mask with one bit set for every value.
+     */
+    public long all() {
+        return all;
+    }
+
+    public int units() {
+        return 3 * size;
+    }
+
+    public int cell(int i, int j) {
+        return size * i + j;
+    }
+
+    public int row(int cell) {
+        return rows[cell];
+    }
+
+    public int column(int cell) {
+        return columns[cell];
+    }
+
+    public int box(int cell) {
+        return boxes[cell];
+    }
+
+    /**
+     * @return The k-th cell of the given unit.
+     */
+    public int unitCell(int unit, int k) {
+        return units[size * unit + k];
+    }
+}
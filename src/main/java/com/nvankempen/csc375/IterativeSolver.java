@@ -0,0 +1,120 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.heuristics.BranchingHeuristic;
+import com.nvankempen.csc375.metrics.Metrics;
+import com.nvankempen.csc375.utils.CancellationToken;
+import com.nvankempen.csc375.utils.IntStack;
+
+import java.util.function.Predicate;
+
+/**
+ * Sequential depth-first search on a single mutable board.
+ * The recursion is replaced by an explicit stack and every cell set along the current path is recorded on an undo
+ * trail, so backtracking clears cells instead of throwing boards away. Nothing is allocated once the search started.
+ * It explores nodes in the same order as the recursive search did, and finds the same solutions.
+ */
+public final class IterativeSolver {
+    private final Sudoku board;
+    private final BranchingHeuristic heuristic;
+    private final CancellationToken token;
+
+    private final IntStack trail;
+    private final int[] cells;
+    private final long[] candidates;
+    private final int[] marks;
+
+    private long nodes;
+
+    private IterativeSolver(Sudoku sudoku, BranchingHeuristic heuristic, CancellationToken token, long nodes) {
+        this.board = sudoku.copy();
+        this.heuristic = heuristic;
+        this.token = token;
+        this.nodes = nodes;
+
+        final int size = sudoku.geometry().cells() + 1;
+        trail = new IntStack(size);
+        cells = new int[size];
+        candidates = new long[size];
+        marks = new int[size];
+    }
+
+    /**
+     * @return A solution to the given Sudoku, or null if it has none or the token got cancelled first.
+     */
+    public static Sudoku solve(Sudoku sudoku, BranchingHeuristic heuristic, CancellationToken token) {
+        final IterativeSolver solver = new IterativeSolver(sudoku, heuristic, token, Long.MAX_VALUE);
+        return solver.search(solution -> false) ? solver.board : null;
+    }
+
+    /**
+     * Visits every solution of the given Sudoku, until the visitor returns false or the token gets cancelled.
+     * The board given to the visitor is the one being searched, it must be copied to be kept.
+     */
+    public static void enumerate(Sudoku sudoku, BranchingHeuristic heuristic, CancellationToken token, Predicate<Sudoku> visitor) {
+        new IterativeSolver(sudoku, heuristic, token, Long.MAX_VALUE).search(visitor);
+    }
+
+    /**
+     * Same as {@link #enumerate(Sudoku, BranchingHeuristic, CancellationToken, Predicate)}, giving up once the given
+     * number of nodes were expanded. Unlike a timeout, the budget ends the search at the same node on every run.
+     *
+     * @return False if the search gave up before the visitor stopped it or every solution was visited.
+     */
+    public static boolean enumerate(Sudoku sudoku, BranchingHeuristic heuristic, long nodes, Predicate<Sudoku> visitor) {
+        final IterativeSolver solver = new IterativeSolver(sudoku, heuristic, new CancellationToken(), nodes);
+        solver.search(visitor);
+        return solver.nodes >= 0;
+    }
+
+    /**
+     * @return True if the visitor stopped the search, the board is then left as the last solution visited.
+     */
+    private boolean search(Predicate<Sudoku> visitor) {
+        if (!Expansion.root(board)) return false;
+
+        final Geometry geometry = board.geometry();
+        int depth = 0;
+        boolean descend = true;
+
+        while (!token.isCancelled()) {
+            if (descend) {
+                if (--nodes < 0) return false;
+                Metrics.nodeExpanded();
+
+                if (board.remaining() == 0) {
+                    if (board.isValid() && !visitor.test(board)) return true;
+                } else {
+                    final int cell = heuristic.select(board);
+                    cells[depth] = cell;
+                    candidates[depth] = board.candidates(geometry.row(cell), geometry.column(cell));
+                    marks[depth] = trail.size();
+                    ++depth;
+                }
+            }
+
+            // Try the next candidate of the deepest open node, backtracking out of exhausted ones.
+            descend = false;
+            while (!descend && depth > 0) {
+                final int top = depth - 1;
+                while (trail.size() > marks[top]) board.clear(trail.pop());
+
+                if (candidates[top] == 0) {
+                    --depth;
+                    continue;
+                }
+
+                final long bit = candidates[top] & -candidates[top];
+                candidates[top] &= ~bit;
+
+                board.place(cells[top], Long.numberOfTrailingZeros(bit) + 1);
+                trail.push(cells[top]);
+
+                descend = Propagator.propagate(board, trail);
+            }
+
+            if (!descend) return false;
+        }
+
+        return false;
+    }
+}
@@ -3,20 +3,98 @@ package com.nvankempen.csc375;
 import com.nvankempen.csc375.gui.GUI;
 import com.nvankempen.csc375.sockets.MainSocket;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
 public final class Main {
     public static void main(String[] args) throws IOException, InterruptedException {
         if (args.length == 0) {
             final MainSocket socket = new MainSocket();
+            socket.serve(new SolverService(socket));
+
             final Scanner sc = new Scanner(System.in);
             while (sc.hasNextLine()) {
                 final String[] peer = sc.nextLine().split(" ");
                 if (peer.length != 2) continue;
                 socket.sendHandshake(InetAddress.getByName(peer[0]), Integer.parseInt(peer[1]));
             }
+        } else if (args[0].equals("--engine") && args.length == 3) {
+            solve(Engine.fromName(args[1]), read(args[2]));
+        } else if (args[0].equals("--compare") && args.length == 2) {
+            final Sudoku sudoku = read(args[1]);
+            for (final Engine engine : Engine.values())
+                if (engine != Engine.CLUSTER) solve(engine, sudoku);
+        } else if (args[0].equals("--count") && (args.length == 2 || args.length == 3)) {
+            final long limit = args.length == 3 ? Long.parseLong(args[2]) : SolutionCounter.NO_LIMIT;
+
+            final long start = System.nanoTime();
+            final long count = new SolutionCounter(read(args[1]), limit, null).invoke();
+            System.out.printf("%d solution%s%s in %.3f seconds. %n", count, count == 1 ? "" : "s",
+                    count == limit ? " or more" : "", (System.nanoTime() - start) / 1e9);
+        } else if (args[0].equals("--batch") && args.length <= 2) {
+            final BufferedReader in = args.length == 2
+                    ? Files.newBufferedReader(Paths.get(args[1]))
+                    : new BufferedReader(new InputStreamReader(System.in));
+
+            try (final PuzzleReader reader = new PuzzleReader(in)) {
+                final PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+                new BatchSolver().run(reader, out, System.err);
+            }
+        } else if (args[0].equals("--check") && args.length <= 2) {
+            final BufferedReader in = args.length == 2
+                    ? Files.newBufferedReader(Paths.get(args[1]))
+                    : new BufferedReader(new InputStreamReader(System.in));
+
+            try (final PuzzleReader reader = new PuzzleReader(in)) {
+                final PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+                new PuzzleChecker().run(reader, out, System.err);
+            }
+        } else if (args[0].equals("--generate") && args.length >= 3 && args.length <= 5) {
+            final Generator.Difficulty difficulty = args.length > 3 ? Generator.Difficulty.fromName(args[3]) : Generator.Difficulty.MEDIUM;
+            final long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+
+            final PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+            new Generator(Integer.parseInt(args[1]), difficulty, seed).run(Integer.parseInt(args[2]), out, System.err);
+        } else if (args[0].equals("--submit") && args.length >= 4 && args.length <= 6) {
+            final MainSocket socket = new MainSocket(0);
+            final int priority = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+            final long timeout = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+            final long start = System.nanoTime();
+            try {
+                final Sudoku solution = socket.submit(InetAddress.getByName(args[1]), Integer.parseInt(args[2]), read(args[3]), priority, timeout).get();
+                System.out.printf("%s in %.3f seconds. %n", solution == null ? "No solution" : "Solved", (System.nanoTime() - start) / 1e9);
+                if (solution != null) System.out.println(solution);
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause().getMessage());
+            } finally {
+                socket.close();
+            }
         } else new GUI("Sudoku", args);
     }
+
+    private static Sudoku read(String filename) throws IOException {
+        try (final Scanner sc = new Scanner(new File(filename))) {
+            return Sudoku.read(sc);
+        }
+    }
+
+    private static void solve(Engine engine, Sudoku sudoku) {
+        final long start = System.nanoTime();
+        final Sudoku solution = engine.solve(sudoku, null);
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s: %s in %.3f seconds. %n",
+                engine.getLabel(), solution == null ? "no solution" : "solved", ((double) elapsed) / Math.pow(10, 9));
+        if (solution != null) System.out.println(solution);
+    }
 }
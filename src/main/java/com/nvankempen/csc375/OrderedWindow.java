@@ -0,0 +1,54 @@
+package com.nvankempen.csc375;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Runs a stream of jobs concurrently on a ForkJoinPool, with a bounded number of them in flight, and hands their
+ * results over in submission order. Shared by the headless batch tools.
+ */
+final class OrderedWindow {
+    private OrderedWindow() {
+
+    }
+
+    interface Source<T, E extends Exception> {
+        /**
+         * @return The next job, or null once there are none left.
+         */
+        Callable<T> next() throws E;
+    }
+
+    /**
+     * Returns once every job of the source ran and its result was consumed. The consumer runs on the calling thread.
+     *
+     * @param window The maximum number of jobs in flight, bounds memory use on large inputs.
+     */
+    static <T, E extends Exception> void run(ForkJoinPool pool, int window, Source<T, E> source, Consumer<T> consumer) throws E, InterruptedException {
+        final Deque<ForkJoinTask<T>> jobs = new ArrayDeque<>(window);
+
+        Callable<T> job = source.next();
+        while (job != null || !jobs.isEmpty()) {
+            if (job != null && jobs.size() < window) {
+                jobs.add(pool.submit(job));
+                job = source.next();
+                continue;
+            }
+
+            consumer.accept(await(jobs.poll()));
+        }
+    }
+
+    private static <T> T await(ForkJoinTask<T> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
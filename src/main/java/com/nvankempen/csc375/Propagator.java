@@ -0,0 +1,98 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.utils.IntStack;
+
+/**
+ * Logical deductions applied at each node before branching.
+ * Naked singles: an empty cell with a single candidate must hold it.
+ * Hidden singles: a value that fits in a single cell of a row, column or box must go there.
+ */
+final class Propagator {
+    private Propagator() {
+
+    }
+
+    /**
+     * Applies naked and hidden singles to the given board, in place, until nothing changes.
+     *
+     * @param sudoku A board owned by the caller, see {@link Sudoku#place(int, int, long)}.
+     * @return false if a contradiction was found: the board cannot be solved.
+     */
+    static boolean propagate(Sudoku sudoku) {
+        return propagate(sudoku, null);
+    }
+
+    /**
+     * Same as {@link #propagate(Sudoku)}, also pushing every cell it sets on the given trail so the caller can
+     * undo them later with {@link Sudoku#clear(int)}. The trail may be null.
+     */
+    static boolean propagate(Sudoku sudoku, IntStack trail) {
+        final Geometry geometry = sudoku.geometry();
+        final int size = geometry.size();
+        boolean changed = true;
+
+        while (changed && sudoku.remaining() > 0) {
+            changed = false;
+
+            for (int i = 0; i < size; ++i) {
+                for (int j = 0; j < size; ++j) {
+                    if (sudoku.isSet(i, j)) continue;
+
+                    final long candidates = sudoku.candidates(i, j);
+                    if (candidates == 0) return false;
+
+                    if ((candidates & (candidates - 1)) == 0) {
+                        sudoku.place(i, j, Long.numberOfTrailingZeros(candidates) + 1);
+                        if (trail != null) trail.push(geometry.cell(i, j));
+                        changed = true;
+                    }
+                }
+            }
+
+            for (int unit = 0; unit < geometry.units(); ++unit) {
+                long once = 0;
+                long twice = 0;
+                long used = 0;
+
+                for (int k = 0; k < size; ++k) {
+                    final int cell = geometry.unitCell(unit, k);
+                    final int i = geometry.row(cell);
+                    final int j = geometry.column(cell);
+
+                    if (sudoku.isSet(i, j)) {
+                        used |= 1L << (sudoku.get(i, j) - 1);
+                    } else {
+                        final long candidates = sudoku.candidates(i, j);
+                        twice |= once & candidates;
+                        once |= candidates;
+                    }
+                }
+
+                // Some value cannot be placed anywhere in this unit.
+                if ((once | used) != geometry.all()) return false;
+
+                for (long hidden = once & ~twice & ~used; hidden != 0; hidden &= hidden - 1) {
+                    final long bit = hidden & -hidden;
+
+                    for (int k = 0; k < size; ++k) {
+                        final int cell = geometry.unitCell(unit, k);
+                        final int i = geometry.row(cell);
+                        final int j = geometry.column(cell);
+
+                        if (!sudoku.isSet(i, j) && (sudoku.candidates(i, j) & bit) != 0) {
+                            sudoku.place(cell, Long.numberOfTrailingZeros(bit) + 1);
+                            if (trail != null) trail.push(cell);
+                            changed = true;
+                            break;
+                        } else if (k == size - 1) {
+                            // An earlier placement took the only cell this value could go to.
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+}
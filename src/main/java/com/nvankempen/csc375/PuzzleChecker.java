@@ -0,0 +1,77 @@
+package com.nvankempen.csc375;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks puzzles without searching them, to sort out broken inputs before solving them. Puzzles are streamed from a
+ * {@link PuzzleReader} and checked concurrently on a shared ForkJoinPool, verdicts are written in input order.
+ */
+public final class PuzzleChecker {
+
+    public enum Verdict {
+        /**
+         * No contradiction was found, the puzzle may still have no solution.
+         */
+        VALID,
+        /**
+         * Some value appears twice in a row, column or box.
+         */
+        INVALID,
+        /**
+         * The givens are consistent, but propagating them leads to a contradiction.
+         */
+        UNSOLVABLE
+    }
+
+    private final ForkJoinPool pool;
+    private final int window;
+
+    /**
+     * @param pool   The pool to check puzzles on.
+     * @param window The maximum number of puzzles in flight, bounds memory use on large inputs.
+     */
+    public PuzzleChecker(ForkJoinPool pool, int window) {
+        this.pool = pool;
+        this.window = window;
+    }
+
+    public PuzzleChecker() {
+        this(ForkJoinPool.commonPool(), 16 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Only the givens are checked, then naked and hidden singles are applied to a copy of the puzzle.
+     */
+    public static Verdict check(Sudoku sudoku) {
+        if (!sudoku.isValid()) return Verdict.INVALID;
+        if (!Propagator.propagate(sudoku.copy())) return Verdict.UNSOLVABLE;
+        return Verdict.VALID;
+    }
+
+    /**
+     * Checks every puzzle of the input, printing one lower case verdict per line. The summary goes to the given
+     * summary stream.
+     */
+    public void run(PuzzleReader reader, PrintStream out, PrintStream summary) throws IOException, InterruptedException {
+        final int[] counts = new int[Verdict.values().length];
+
+        final long start = System.nanoTime();
+
+        OrderedWindow.run(pool, window, () -> {
+            final Sudoku puzzle = reader.next();
+            return puzzle == null ? null : () -> check(puzzle);
+        }, verdict -> {
+            out.println(verdict.name().toLowerCase());
+            ++counts[verdict.ordinal()];
+        });
+
+        out.flush();
+        final long elapsed = System.nanoTime() - start;
+
+        summary.printf("%d puzzles, %d valid, %d invalid, %d unsolvable in %.3f seconds. %n",
+                counts[0] + counts[1] + counts[2], counts[Verdict.VALID.ordinal()], counts[Verdict.INVALID.ordinal()],
+                counts[Verdict.UNSOLVABLE.ordinal()], elapsed / 1e9);
+    }
+}
@@ -0,0 +1,81 @@
+package com.nvankempen.csc375;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Streams puzzles from a text input. Two layouts are accepted, and can be mixed:
+ * <ul>
+ *     <li>one puzzle per line, all N^4 values on the same line, as written by {@link Sudoku#toLine()},</li>
+ *     <li>the format of the files the GUI loads, N^2 lines of N^2 values.</li>
+ * </ul>
+ * Values are whitespace separated, 0 for empty cells. Blank lines are skipped.
+ */
+public final class PuzzleReader implements Closeable {
+    private final BufferedReader reader;
+    private int line = 0;
+
+    public PuzzleReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return The next puzzle, or null once the input is exhausted.
+     */
+    public Sudoku next() throws IOException {
+        String first = readLine();
+        while (first != null && first.isBlank()) first = readLine();
+        if (first == null) return null;
+
+        // 16 values could be a whole order 2 board or the first row of a 16x16 one, the latter is far more likely.
+        final int size = count(first);
+        if (size > 16 && isFourthPower(size)) return Sudoku.read(new Scanner(first));
+
+        final int order = (int) Math.round(Math.sqrt(size));
+        if (order * order != size)
+            throw new IllegalArgumentException("Line " + line + ": " + size + " values do not make a Sudoku row");
+
+        final List<String> rows = new ArrayList<>(size);
+        rows.add(first);
+
+        while (rows.size() < size) {
+            final String next = readLine();
+            if (next == null)
+                throw new IllegalArgumentException("Line " + line + ": expected " + size + " rows, got " + rows.size());
+            if (count(next) != size)
+                throw new IllegalArgumentException("Line " + line + ": expected " + size + " values");
+
+            rows.add(next);
+        }
+
+        return Sudoku.read(new Scanner(String.join(" ", rows)));
+    }
+
+    private String readLine() throws IOException {
+        final String next = reader.readLine();
+        if (next != null) ++line;
+        return next;
+    }
+
+    private static int count(String line) {
+        final String trimmed = line.trim();
+        return trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+    }
+
+    private static boolean isFourthPower(int count) {
+        for (int order = 1; order <= Geometry.MAX_ORDER; ++order) {
+            if (order * order * order * order == count) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,313 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.metrics.Metrics;
+import com.nvankempen.csc375.utils.BitPackedArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Bounded, least recently used cache of solved puzzles, in front of a solver. Puzzles that only differ by a relabeling
+ * of their values, an order of their bands and stacks, or a transposition share an entry: every puzzle is brought to a
+ * canonical form first, and the cached solution is mapped back to the puzzle's own orientation and labels. Puzzles
+ * without a solution are cached as well.
+ * <p>
+ * The canonical form is the smallest relabeled grid, values numbered by first appearance in row major order, over both
+ * orientations and every order of bands and stacks sorting them by number of givens. When too many orders tie, a single
+ * one is tried: such puzzles may miss entries of equivalent ones, but two puzzles only ever share an entry if they are
+ * equivalent.
+ */
+public final class SolutionCache {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("sudoku.cache", 4096);
+
+    // Bound on the orders of bands, and of stacks, tried per orientation.
+    private static final int MAX_ORDERS = 24;
+
+    private final Map<BitPackedArray, Optional<BitPackedArray>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity The maximum number of puzzles kept, the least recently used one is evicted past it.
+     */
+    public SolutionCache(int capacity) {
+        entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BitPackedArray, Optional<BitPackedArray>> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * @param solver Called on a miss, returns null if the puzzle has no solution.
+     * @return The solution of the given puzzle, or null if it has none.
+     */
+    public Sudoku solve(Sudoku puzzle, UnaryOperator<Sudoku> solver) {
+        final Form form = new Form(puzzle);
+        final Hit hit = lookup(form);
+        if (hit != null) return hit.solution;
+
+        final Sudoku solution = solver.apply(puzzle);
+        store(form, solution);
+        return solution;
+    }
+
+    /**
+     * @return The cached outcome for the given puzzle, or null if it is not cached.
+     */
+    public Hit lookup(Sudoku puzzle) {
+        return lookup(new Form(puzzle));
+    }
+
+    /**
+     * Only final outcomes are to be stored: a solver that was cancelled before it found a solution proves nothing.
+     *
+     * @param solution The solution of the given puzzle, null if it has none.
+     */
+    public void store(Sudoku puzzle, Sudoku solution) {
+        store(new Form(puzzle), solution);
+    }
+
+    private Hit lookup(Form form) {
+        final Optional<BitPackedArray> entry = entries.get(form.grid);
+
+        if (entry == null) {
+            misses.increment();
+            Metrics.cacheMiss();
+            return null;
+        }
+
+        hits.increment();
+        Metrics.cacheHit();
+        return new Hit(entry.map(form::restore).orElse(null));
+    }
+
+    private void store(Form form, Sudoku solution) {
+        entries.put(form.grid, Optional.ofNullable(solution).map(form::canonical));
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static final class Hit {
+        private final Sudoku solution;
+
+        private Hit(Sudoku solution) {
+            this.solution = solution;
+        }
+
+        /**
+         * @return The solution of the puzzle, in its own orientation and labels. Null if it has none.
+         */
+        public Sudoku solution() {
+            return solution;
+        }
+    }
+
+    /**
+     * The canonical form of a puzzle, along with the transformation that leads to it. Canonical cell (r, c) comes from
+     * row bands[r / order] * order + r % order and the column found the same way from stacks, swapped if transposed.
+     */
+    private static final class Form {
+        private final Geometry geometry;
+        private final BitPackedArray grid;
+
+        private boolean transposed;
+        private int[] bands;
+        private int[] stacks;
+        // Canonical label of each value, indexed by value.
+        private final long[] labels;
+
+        private Form(Sudoku puzzle) {
+            geometry = puzzle.geometry();
+            final int size = geometry.size();
+
+            labels = new long[size + 1];
+            long[] best = null;
+            long[] current = new long[geometry.cells()];
+            final long[] relabeling = new long[size + 1];
+
+            for (final boolean transpose : new boolean[]{false, true}) {
+                final int[] rowCounts = new int[geometry.order()];
+                final int[] columnCounts = new int[geometry.order()];
+
+                for (int i = 0; i < size; ++i) {
+                    for (int j = 0; j < size; ++j) {
+                        if (!puzzle.isSet(i, j)) continue;
+                        ++rowCounts[(transpose ? j : i) / geometry.order()];
+                        ++columnCounts[(transpose ? i : j) / geometry.order()];
+                    }
+                }
+
+                for (final int[] bandOrder : orders(rowCounts)) {
+                    for (final int[] stackOrder : orders(columnCounts)) {
+                        if (!smaller(puzzle, transpose, bandOrder, stackOrder, best, current, relabeling)) continue;
+
+                        final long[] swap = best == null ? new long[current.length] : best;
+                        best = current;
+                        current = swap;
+
+                        transposed = transpose;
+                        bands = bandOrder;
+                        stacks = stackOrder;
+                        System.arraycopy(relabeling, 0, labels, 0, labels.length);
+                    }
+                }
+            }
+
+            // Values absent from the puzzle get the remaining labels, any bijection maps solutions to solutions.
+            long next = 0;
+            for (final long label : labels) next = Math.max(next, label);
+            for (int value = 1; value <= size; ++value) if (labels[value] == 0) labels[value] = ++next;
+
+            grid = new BitPackedArray(geometry.cells(), geometry.bits());
+            for (int cell = 0; cell < best.length; ++cell) grid.setUnchecked(cell, best[cell]);
+        }
+
+        /**
+         * Fills current with the puzzle under the given transformation, relabeled by first appearance, stopping as
+         * soon as it compares greater than best.
+         *
+         * @return True if current is smaller than best, or best is null.
+         */
+        private boolean smaller(Sudoku puzzle, boolean transpose, int[] bandOrder, int[] stackOrder, long[] best, long[] current, long[] relabeling) {
+            final int order = geometry.order();
+            final int size = geometry.size();
+
+            Arrays.fill(relabeling, 0);
+            long next = 0;
+            boolean less = best == null;
+
+            for (int r = 0; r < size; ++r) {
+                final int i = bandOrder[r / order] * order + r % order;
+
+                for (int c = 0; c < size; ++c) {
+                    final int j = stackOrder[c / order] * order + c % order;
+                    final long value = transpose ? puzzle.get(j, i) : puzzle.get(i, j);
+
+                    if (value != 0 && relabeling[(int) value] == 0) relabeling[(int) value] = ++next;
+                    final long label = relabeling[(int) value];
+
+                    final int cell = r * size + c;
+                    current[cell] = label;
+
+                    if (!less) {
+                        if (label > best[cell]) return false;
+                        if (label < best[cell]) less = true;
+                    }
+                }
+            }
+
+            return less;
+        }
+
+        /**
+         * @return Every order of the indices sorting the given counts in decreasing order, or a single one if there
+         * are more than {@link #MAX_ORDERS}.
+         */
+        private static List<int[]> orders(int[] counts) {
+            final int[] sorted = IntStream.range(0, counts.length).boxed()
+                    .sorted((a, b) -> counts[b] - counts[a])
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            List<int[]> orders = Collections.singletonList(sorted);
+
+            for (int from = 0, to; from < sorted.length; from = to) {
+                to = from + 1;
+                while (to < sorted.length && counts[sorted[to]] == counts[sorted[from]]) ++to;
+                if (to - from == 1) continue;
+
+                final List<int[]> next = new ArrayList<>();
+                for (final int[] order : orders) permute(order.clone(), from, to, from, next);
+                if (next.size() > MAX_ORDERS) return Collections.singletonList(sorted);
+                orders = next;
+            }
+
+            return orders;
+        }
+
+        private static void permute(int[] order, int from, int to, int k, List<int[]> out) {
+            if (k == to) {
+                out.add(order.clone());
+                return;
+            }
+
+            for (int l = k; l < to; ++l) {
+                int swap = order[k];
+                order[k] = order[l];
+                order[l] = swap;
+
+                permute(order, from, to, k + 1, out);
+
+                swap = order[k];
+                order[k] = order[l];
+                order[l] = swap;
+            }
+        }
+
+        /**
+         * @return The given solution of the puzzle, in canonical form.
+         */
+        private BitPackedArray canonical(Sudoku solution) {
+            final int order = geometry.order();
+            final int size = geometry.size();
+            final BitPackedArray array = new BitPackedArray(geometry.cells(), geometry.bits());
+
+            for (int r = 0; r < size; ++r) {
+                final int i = bands[r / order] * order + r % order;
+
+                for (int c = 0; c < size; ++c) {
+                    final int j = stacks[c / order] * order + c % order;
+                    array.setUnchecked(r * size + c, labels[(int) (transposed ? solution.get(j, i) : solution.get(i, j))]);
+                }
+            }
+
+            return array;
+        }
+
+        /**
+         * @return The given canonical solution, in the puzzle's orientation and labels.
+         */
+        private Sudoku restore(BitPackedArray solution) {
+            final int order = geometry.order();
+            final int size = geometry.size();
+
+            final long[] values = new long[size + 1];
+            for (int value = 1; value <= size; ++value) values[(int) labels[value]] = value;
+
+            final long[][] grid = new long[size][size];
+
+            for (int r = 0; r < size; ++r) {
+                final int i = bands[r / order] * order + r % order;
+
+                for (int c = 0; c < size; ++c) {
+                    final int j = stacks[c / order] * order + c % order;
+                    final long value = values[(int) solution.getUnchecked(r * size + c)];
+                    if (transposed) grid[j][i] = value;
+                    else grid[i][j] = value;
+                }
+            }
+
+            return new Sudoku(grid);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.heuristics.BranchingHeuristic;
+import com.nvankempen.csc375.heuristics.CutoffPolicy;
+import com.nvankempen.csc375.metrics.Metrics;
+import com.nvankempen.csc375.utils.CancellationToken;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Counts the solutions of a Sudoku, on the same fork/join tree as {@link SudokuSolver}. Every task counts the solutions
+ * of its own subtree and adds up the counts of its children once they all completed, so no counter is shared while
+ * searching. Only a limited count shares one, touched once per solution found.
+ */
+public final class SolutionCounter extends CountedCompleter<Long> {
+
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final SolutionCounter parent;
+    private final Sudoku sudoku;
+    private final long limit;
+    private final AtomicLong found;
+    private final Consumer<Sudoku> consumer;
+    private final CancellationToken token;
+    private final BranchingHeuristic heuristic;
+    private final CutoffPolicy cutoff;
+    private final int depth;
+
+    private long count = 0;
+
+    // Children are chained through their sibling, the first one being the last forked.
+    private SolutionCounter child;
+    private SolutionCounter sibling;
+
+    public SolutionCounter(Sudoku sudoku) {
+        this(sudoku, NO_LIMIT, null);
+    }
+
+    /**
+     * @param limit    The search stops once that many solutions were found, {@link #NO_LIMIT} to count them all.
+     * @param consumer Given every solution as it is found, from several threads at once. May be null.
+     */
+    public SolutionCounter(Sudoku sudoku, long limit, Consumer<Sudoku> consumer) {
+        this(sudoku, limit, consumer, BranchingHeuristic.DEFAULT, CutoffPolicy.DEFAULT);
+    }
+
+    public SolutionCounter(Sudoku sudoku, long limit, Consumer<Sudoku> consumer, BranchingHeuristic heuristic, CutoffPolicy cutoff) {
+        this(null, sudoku.copy(), limit, limit == NO_LIMIT ? null : new AtomicLong(), consumer, new CancellationToken(), heuristic, cutoff);
+    }
+
+    private SolutionCounter(SolutionCounter parent, Sudoku sudoku, long limit, AtomicLong found, Consumer<Sudoku> consumer, CancellationToken token, BranchingHeuristic heuristic, CutoffPolicy cutoff) {
+        super(parent);
+        this.parent = parent;
+        this.sudoku = sudoku;
+        this.limit = limit;
+        this.found = found;
+        this.consumer = consumer;
+        this.token = token;
+        this.heuristic = heuristic;
+        this.cutoff = cutoff;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    @Override
+    public Long getRawResult() {
+        return count;
+    }
+
+    @Override
+    public void compute() {
+        if (token.isCancelled()) {
+            tryComplete();
+            return;
+        }
+
+        // Children are propagated by their parent before being forked, only the root is left to do.
+        if (parent == null && !Expansion.root(sudoku)) {
+            tryComplete();
+            return;
+        }
+
+        Metrics.nodeExpanded();
+
+        if (sudoku.remaining() == 0 || cutoff.isSequential(sudoku, depth)) {
+            IterativeSolver.enumerate(sudoku, heuristic, token, this::visit);
+        } else {
+            for (final Sudoku copy : Expansion.children(sudoku, heuristic, token)) {
+                final SolutionCounter task = new SolutionCounter(this, copy, limit, found, consumer, token, heuristic, cutoff);
+                task.sibling = child;
+                child = task;
+
+                addToPendingCount(1);
+                Metrics.taskForked();
+                task.fork();
+            }
+        }
+
+        tryComplete();
+    }
+
+    /**
+     * Runs once every child completed, their counts are final.
+     */
+    @Override
+    public void onCompletion(CountedCompleter<?> caller) {
+        for (SolutionCounter task = child; task != null; task = task.sibling) count += task.count;
+    }
+
+    private boolean visit(Sudoku solution) {
+        if (found != null) {
+            final long ticket = found.incrementAndGet();
+            if (ticket > limit) return false;
+            if (ticket == limit) token.cancel();
+        }
+
+        ++count;
+        if (consumer != null) consumer.accept(solution.copy());
+        return true;
+    }
+
+    /**
+     * Stops the count, the result is then the number of solutions found so far.
+     */
+    public void cancel() {
+        token.cancel();
+    }
+}
@@ -0,0 +1,227 @@
+package com.nvankempen.csc375;
+
+import com.nvankempen.csc375.sockets.MainSocket;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running solver service, many puzzles can be submitted at once, locally or by other nodes through the socket.
+ * Jobs are started by priority, then by deadline, then in submission order, and several of them run at once on the
+ * shared pool so a very hard puzzle only holds a fraction of it. The cutoff policy sends subtrees to the sequential
+ * solver as soon as workers have a surplus of queued tasks, so concurrent jobs end up sharing the workers, and the
+ * socket splits helpers evenly between the trees shipping work.
+ * <p>
+ * A job that is still running at its deadline is cancelled and completes with whatever solution was found, null if
+ * none. Queued jobs whose deadline has passed are not started.
+ * <p>
+ * Puzzles that were already solved, or are equivalent to one that was, are answered from a {@link SolutionCache} as
+ * soon as they are started. Only complete searches are cached, not the ones cut short by a deadline or a cancellation.
+ */
+public final class SolverService {
+    private static final Comparator<Job> ORDER = Comparator.comparingInt((Job job) -> -job.priority)
+            .thenComparingLong(job -> job.deadline)
+            .thenComparingLong(job -> job.id);
+
+    private final MainSocket socket;
+    private final ForkJoinPool pool;
+    private final int concurrency;
+    private final SolutionCache cache;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(ORDER);
+    private final Set<Job> running = new HashSet<>();
+    private boolean shutdown = false;
+
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "solver-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param socket      The socket to distribute work through. May be null.
+     * @param pool        The pool to solve puzzles on.
+     * @param concurrency The maximum number of jobs running at once.
+     * @param cache       The cache to look puzzles up in before solving them. May be null.
+     */
+    public SolverService(MainSocket socket, ForkJoinPool pool, int concurrency, SolutionCache cache) {
+        this.socket = socket;
+        this.pool = pool;
+        this.concurrency = concurrency;
+        this.cache = cache;
+    }
+
+    public SolverService(MainSocket socket) {
+        this(socket, ForkJoinPool.commonPool(), 2 * ForkJoinPool.getCommonPoolParallelism(), new SolutionCache(SolutionCache.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @param priority Jobs with a higher priority are started first.
+     * @param timeout  The time the job may take, in milliseconds, queueing included. 0 for no deadline.
+     */
+    public Job submit(Sudoku sudoku, int priority, long timeout) {
+        final long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+        final Job job = new Job(ids.incrementAndGet(), sudoku, priority, deadline);
+
+        synchronized (this) {
+            if (shutdown) {
+                job.result.complete(null);
+                return job;
+            }
+
+            queue.add(job);
+        }
+
+        if (timeout > 0) deadlines.schedule(job::expire, timeout, TimeUnit.MILLISECONDS);
+
+        schedule();
+        return job;
+    }
+
+    private void schedule() {
+        while (true) {
+            final Job job;
+            synchronized (this) {
+                if (running.size() >= concurrency || queue.isEmpty()) return;
+                job = queue.poll();
+                running.add(job);
+            }
+
+            start(job);
+        }
+    }
+
+    /**
+     * Jobs are submitted by socket workers, which must not be held up: the cache lookup runs on the pool along with the
+     * search.
+     */
+    private void start(Job job) {
+        CompletableFuture.runAsync(() -> run(job), pool);
+    }
+
+    private void run(Job job) {
+        final SolutionCache.Hit hit = cache == null ? null : cache.lookup(job.sudoku);
+        if (hit != null) {
+            job.result.complete(hit.solution());
+            finished(job);
+            return;
+        }
+
+        synchronized (job) {
+            if (job.result.isDone() || System.nanoTime() >= job.deadline) {
+                job.result.complete(null);
+                finished(job);
+                return;
+            }
+
+            job.solver = new SudokuSolver(job.sudoku, socket);
+        }
+
+        final SudokuSolver solver = job.solver;
+        try {
+            final Sudoku solution = solver.invoke();
+
+            // A solution cancels the tree, no solution is only final if nothing else did.
+            if (cache != null && (solution != null || !solver.getToken().isCancelled())) cache.store(job.sudoku, solution);
+            job.result.complete(solution);
+        } catch (RuntimeException e) {
+            job.result.completeExceptionally(e);
+        }
+
+        finished(job);
+    }
+
+    private void finished(Job job) {
+        synchronized (this) {
+            running.remove(job);
+        }
+
+        schedule();
+    }
+
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Queued jobs complete right away, running ones as soon as their tasks notice. Jobs submitted afterwards complete
+     * right away as well.
+     */
+    public void shutdown() {
+        deadlines.shutdownNow();
+
+        // Cancelling a job takes its own lock, and removes it from the queue: drain first, cancel outside the lock.
+        final List<Job> queued;
+        final List<Job> started;
+        synchronized (this) {
+            shutdown = true;
+            queued = new ArrayList<>(queue);
+            queue.clear();
+            started = new ArrayList<>(running);
+        }
+
+        queued.forEach(job -> job.result.complete(null));
+        started.forEach(Job::cancel);
+    }
+
+    public final class Job {
+        private final long id;
+        private final Sudoku sudoku;
+        private final int priority;
+        private final long deadline;
+        private final CompletableFuture<Sudoku> result = new CompletableFuture<>();
+        private SudokuSolver solver;
+
+        private Job(long id, Sudoku sudoku, int priority, long deadline) {
+            this.id = id;
+            this.sudoku = sudoku;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public int priority() {
+            return priority;
+        }
+
+        /**
+         * @return Completes with the solution, or null if there is none or none was found in time.
+         */
+        public CompletableFuture<Sudoku> result() {
+            return result;
+        }
+
+        /**
+         * Stops the job, a queued job completes right away and a running one as soon as its tasks notice.
+         */
+        public void cancel() {
+            final boolean queued;
+            synchronized (SolverService.this) {
+                queued = queue.remove(this);
+            }
+
+            synchronized (this) {
+                if (queued || solver == null) result.complete(null);
+                else solver.cancel();
+            }
+        }
+
+        private void expire() {
+            if (!result.isDone()) cancel();
+        }
+    }
+}
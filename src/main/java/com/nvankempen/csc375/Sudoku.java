@@ -1,156 +1,393 @@
 package com.nvankempen.csc375;
 
+import com.nvankempen.csc375.metrics.Metrics;
 import com.nvankempen.csc375.utils.BitPackedArray;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.BitSet;
 import java.util.List;
+import java.util.Scanner;
 
-import static com.nvankempen.csc375.Constants.BITS;
 import static com.nvankempen.csc375.Constants.N;
 
 public final class Sudoku {
+    private final Geometry geometry;
     private final BitPackedArray array;
-    private final int count;
+    private int count;
+
+    // Values used by each row, column and box, in that order. Bit v - 1 is set when v is used in the unit.
+    private final long[] used;
 
     public Sudoku() {
-        array = new BitPackedArray(N * N * N * N, BITS);
+        this(N);
+    }
+
+    public Sudoku(int order) {
+        geometry = Geometry.of(order);
+        array = new BitPackedArray(geometry.cells(), geometry.bits());
         count = 0;
+        used = new long[geometry.units()];
     }
 
+    /**
+     * @param grid A square grid of N^2 by N^2 values, 0 for empty cells. The order N is inferred from its size.
+     * @throws IllegalArgumentException If the grid is not square, or holds a value outside of [0, N^2].
+     */
     public Sudoku(long[][] grid) {
-        array = new BitPackedArray(N * N * N * N, BITS);
+        geometry = Geometry.fitting(grid.length * grid.length);
+        if (geometry.size() != grid.length)
+            throw new IllegalArgumentException("A " + grid.length + "x" + grid.length + " grid is not a Sudoku");
+
+        array = new BitPackedArray(geometry.cells(), geometry.bits());
 
         int count = 0;
 
-        for (int i = 0; i < N * N; ++i) {
-            for (int j = 0; j < N * N; ++j) {
+        for (int i = 0; i < geometry.size(); ++i) {
+            for (int j = 0; j < geometry.size(); ++j) {
+                if (grid[i][j] < 0 || grid[i][j] > geometry.size())
+                    throw new IllegalArgumentException(grid[i][j] + " is not a value of an order " + geometry.order() + " Sudoku");
+
                 if (grid[i][j] != 0) {
-                    array.set(N * N * i + j, grid[i][j]);
+                    array.set(geometry.cell(i, j), grid[i][j]);
                     ++count;
                 }
             }
         }
 
         this.count = count;
+        this.used = used(geometry, array);
     }
 
-    private Sudoku(BitPackedArray array) {
+    private Sudoku(Geometry geometry, BitPackedArray array) {
+        if (array.size() != geometry.cells())
+            throw new IllegalArgumentException(array.size() + " cells cannot make an order " + geometry.order() + " Sudoku");
+        if (array.bits() != geometry.bits())
+            throw new IllegalArgumentException(array.bits() + "-bit cells cannot make an order " + geometry.order() + " Sudoku");
+
+        this.geometry = geometry;
         this.array = array;
 
         int count = 0;
 
-        for (int i = 0; i < N * N; ++i) {
-            for (int j = 0; j < N * N; ++j) {
-                if (isSet(i, j)) ++count;
-            }
+        for (int cell = 0; cell < geometry.cells(); ++cell) {
+            final long value = array.get(cell);
+            if (value > geometry.size())
+                throw new IllegalArgumentException(value + " is not a value of an order " + geometry.order() + " Sudoku");
+            if (value != 0) ++count;
         }
 
         this.count = count;
+        this.used = used(geometry, array);
     }
 
-    private Sudoku(BitPackedArray array, int count) {
+    private Sudoku(Geometry geometry, BitPackedArray array, int count, long[] used) {
+        this.geometry = geometry;
         this.array = array;
         this.count = count;
+        this.used = used;
     }
 
-    public final boolean isValid() {
-        for (int i = 0; i < N * N; ++i) {
-            final BitSet row = new BitSet(N * N);
-            final BitSet column = new BitSet(N * N);
-
-            for (int j = 0; j < N * N; ++j) {
-                if (array.get(N * N * i + j) != 0 && row.get((int) array.get(N * N * i + j))) return false;
-                else row.set((int) array.get(N * N * i + j));
-
-                if (array.get(N * N * j + i) != 0 && column.get((int) array.get(N * N * j + i))) return false;
-                else column.set((int) array.get(N * N * j + i));
+    private static long[] used(Geometry geometry, BitPackedArray array) {
+        final long[] used = new long[geometry.units()];
+        final int size = geometry.size();
+
+        for (int cell = 0; cell < geometry.cells(); ++cell) {
+            final long value = array.getUnchecked(cell);
+            if (value != 0) {
+                final long bit = 1L << (value - 1);
+                used[geometry.row(cell)] |= bit;
+                used[size + geometry.column(cell)] |= bit;
+                used[2 * size + geometry.box(cell)] |= bit;
             }
         }
 
-        for (int i = 0; i < N; ++i) {
-            for (int j = 0; j < N; j++) {
-                final BitSet block = new BitSet(N * N);
+        return used;
+    }
 
-                for (int k = 0; k < N * N; k++) {
-                    final int a = N * i + k % N;
-                    final int b = N * j + k / N;
+    public final Geometry geometry() {
+        return geometry;
+    }
 
-                    if (array.get(N * N * a + b) != 0 && block.get((int) array.get(N * N * a + b))) return false;
-                    else block.set((int) array.get(N * N * a + b));
-                }
+    public final int order() {
+        return geometry.order();
+    }
+
+    /**
+     * @return The number of rows, columns, boxes and values of this board.
+     */
+    public final int size() {
+        return geometry.size();
+    }
+
+    /**
+     * Allocation-free, cheap enough to be called on every node.
+     *
+     * @return True if no value appears twice in a row, column or box. Empty cells are ignored.
+     */
+    public final boolean isValid() {
+        final int size = geometry.size();
+
+        for (int unit = 0; unit < geometry.units(); ++unit) {
+            long seen = 0;
+
+            for (int k = 0; k < size; ++k) {
+                final long value = array.getUnchecked(geometry.unitCell(unit, k));
+                if (value == 0) continue;
+
+                final long bit = 1L << (value - 1);
+                if ((seen & bit) != 0) return false;
+                seen |= bit;
             }
         }
 
         return true;
     }
 
-    public final List<Long> whatCanWeSetAt(int x, int y) {
-        final BitSet set = new BitSet(N * N);
-        set.set(0, N * N);
+    /**
+     * Allocation-free version of {@link #whatCanWeSetAt(int, int)}.
+     *
+     * @return A mask of the values that can be set at (x, y), where bit v - 1 is set if v can be set.
+     */
+    public final long candidates(int x, int y) {
+        final int size = geometry.size();
+        if (x < 0 || x >= size || y < 0 || y >= size)
+            throw new ArrayIndexOutOfBoundsException("(" + x + ", " + y + ")");
+
+        final int cell = geometry.cell(x, y);
+        final int box = geometry.box(cell);
+
+        if (array.getUnchecked(cell) == 0)
+            return ~(used[x] | used[size + y] | used[2 * size + box]) & geometry.all();
 
-        final int a = x / N;
-        final int b = y / N;
+        // The masks cannot tell whether this cell is the only one using its value in a unit, scan the units instead.
+        long set = geometry.all();
 
-        for (int i = 0; i < N * N; ++i) {
-            if (i != x && array.get(N * N * i + y) != 0) set.clear((int) array.get(N * N * i + y) - 1);
-            if (i != y && array.get(N * N * x + i) != 0) set.clear((int) array.get(N * N * x + i) - 1);
+        for (int u = 0; u < 3; ++u) {
+            final int unit = u == 0 ? x : u == 1 ? size + y : 2 * size + box;
 
-            final int c = N * a + i % N;
-            final int d = N * b + i / N;
-            if ((c != x || d != y) && array.get(N * N * c + d) != 0) set.clear((int) array.get(N * N * c + d) - 1);
+            for (int k = 0; k < size; ++k) {
+                final int other = geometry.unitCell(unit, k);
+                if (other != cell && array.getUnchecked(other) != 0) set &= ~(1L << (array.getUnchecked(other) - 1));
+            }
         }
 
-        final List<Long> possibilities = new ArrayList<>(set.cardinality());
-        for (int i = 0; i < N * N; ++i) {
-            if (set.get(i))
-                possibilities.add((long) (i + 1));
+        return set;
+    }
+
+    public final List<Long> whatCanWeSetAt(int x, int y) {
+        long set = candidates(x, y);
+
+        final List<Long> possibilities = new ArrayList<>(Long.bitCount(set));
+        while (set != 0) {
+            possibilities.add((long) Long.numberOfTrailingZeros(set) + 1);
+            set &= set - 1;
         }
 
         return possibilities;
     }
 
     public final int remaining() {
-        return N * N * N * N - count;
+        return geometry.cells() - count;
     }
 
     public final long get(int i, int j) {
-        return array.get(N * N * i + j);
+        checkBounds(i, j);
+        return array.getUnchecked(geometry.cell(i, j));
     }
 
+    /**
+     * Sudoku instances are never modified once built, so they can be shared freely between fork/join tasks and
+     * threads. This returns a new instance with the given cell updated, only the backing words are copied.
+     */
     public Sudoku set(int i, int j, long v) {
-        final BitPackedArray array = new BitPackedArray(N * N * N * N, BITS);
-
-        int count = 0;
+        final long previous = get(i, j);
+        if (previous == v) return this;
+
+        final int cell = geometry.cell(i, j);
+        final int size = geometry.size();
+        final BitPackedArray array = this.array.with(cell, v);
+
+        int count = this.count;
+        if (previous == 0) ++count;
+        else if (v == 0) --count;
+
+        final long[] used;
+        if (previous == 0) {
+            used = this.used.clone();
+        } else {
+            // The previous value may still be used elsewhere in the units, recompute them from scratch.
+            used = used(geometry, array);
+        }
 
-        for (int x = 0; x < N * N; ++x) {
-            for (int y = 0; y < N * N; ++y) {
-                final long value = (x == i && y == j) ? v : this.array.get(N * N * x + y);
-                if (value != 0) {
-                    array.set(N * N * x + y, value);
-                    ++count;
-                }
-            }
+        if (v != 0) {
+            final long bit = 1L << (v - 1);
+            used[i] |= bit;
+            used[size + j] |= bit;
+            used[2 * size + geometry.box(cell)] |= bit;
         }
 
-        return new Sudoku(array, count);
+        Metrics.sudokuCopied();
+        return new Sudoku(geometry, array, count, used);
+    }
+
+    /**
+     * @return A deep copy of this board, which can then be updated in place with {@link #place(int, int, long)}.
+     */
+    Sudoku copy() {
+        Metrics.sudokuCopied();
+        return new Sudoku(geometry, array.copy(), count, used.clone());
+    }
+
+    /**
+     * Sets an empty cell in place. Only meant for boards owned by a single solver that have not been shared yet,
+     * the public API is immutable. The value is assumed to be one of the cell's candidates.
+     */
+    void place(int i, int j, long v) {
+        place(geometry.cell(i, j), v);
+    }
+
+    void place(int cell, long v) {
+        final int size = geometry.size();
+        final long bit = 1L << (v - 1);
+
+        array.setUnchecked(cell, v);
+        used[geometry.row(cell)] |= bit;
+        used[size + geometry.column(cell)] |= bit;
+        used[2 * size + geometry.box(cell)] |= bit;
+        ++count;
+    }
+
+    /**
+     * Undoes {@link #place(int, long)}. The value being removed must not be used anywhere else in the cell's units,
+     * which holds for any value that was placed as a candidate.
+     */
+    void clear(int cell) {
+        final int size = geometry.size();
+        final long bit = ~(1L << (array.getUnchecked(cell) - 1));
+
+        array.setUnchecked(cell, 0);
+        used[geometry.row(cell)] &= bit;
+        used[size + geometry.column(cell)] &= bit;
+        used[2 * size + geometry.box(cell)] &= bit;
+        --count;
     }
 
     public boolean isSet(int i, int j) {
-        return array.get(N * N * i + j) != 0;
+        checkBounds(i, j);
+        return array.getUnchecked(geometry.cell(i, j)) != 0;
+    }
+
+    private void checkBounds(int i, int j) {
+        if (i < 0 || i >= geometry.size() || j < 0 || j >= geometry.size())
+            throw new ArrayIndexOutOfBoundsException("(" + i + ", " + j + ")");
+    }
+
+    /**
+     * Reads a board written as N^4 whitespace separated values, row by row, 0 for empty cells.
+     * The order N is inferred from the number of values, missing values are left empty. Reading stops at the first
+     * token that is not a number, an empty board of order {@link Constants#N} is returned if there was none.
+     */
+    public static Sudoku read(Scanner sc) {
+        final List<Long> values = new ArrayList<>();
+        while (sc.hasNextLong()) values.add(sc.nextLong());
+        if (values.isEmpty()) return new Sudoku();
+
+        final int size = Geometry.fitting(values.size()).size();
+        final long[][] data = new long[size][size];
+
+        for (int k = 0; k < values.size() && k < size * size; ++k)
+            data[k % size][k / size] = values.get(k);
+
+        return new Sudoku(data);
+    }
+
+    /**
+     * @return This board on a single line, in the format {@link #read(Scanner)} reads.
+     */
+    public String toLine() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int k = 0; k < geometry.cells(); ++k) {
+            if (k > 0) builder.append(' ');
+            builder.append(get(k % geometry.size(), k / geometry.size()));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return The number of bytes {@link #serialize(OutputStream)} writes, the same for every board of this order.
+     */
+    public int serializedSize() {
+        return 1 + array.serializedSize();
     }
 
     public void serialize(OutputStream out) throws IOException {
+        out.write(geometry.order());
         array.serialize(out);
     }
 
     public static Sudoku deserialize(ByteBuffer in) {
-        return new Sudoku(BitPackedArray.deserialize(in));
+        final Geometry geometry = Geometry.of(in.get());
+        return new Sudoku(geometry, BitPackedArray.deserialize(in));
+    }
+
+    /**
+     * Writes this board as the assignments it adds to the given base board, 3 bytes per cell instead of the whole
+     * array. Every cell set in the base must be set to the same value in this board. Only smaller than
+     * {@link #serialize(OutputStream)} when few assignments were added, compare with {@link #serializedSize()}.
+     */
+    public void serializeDelta(Sudoku base, OutputStream out) throws IOException {
+        if (base.geometry != geometry)
+            throw new IllegalArgumentException("Cannot encode an order " + order() + " board against an order " + base.order() + " one");
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES + 3 * (base.remaining() - remaining()));
+        buffer.putShort((short) (base.remaining() - remaining()));
+
+        for (int cell = 0; cell < geometry.cells(); ++cell) {
+            final long value = array.getUnchecked(cell);
+            final long previous = base.array.getUnchecked(cell);
+
+            if (previous != 0 && previous != value)
+                throw new IllegalArgumentException("Cell " + cell + " differs from the base board");
+
+            if (previous == 0 && value != 0) {
+                buffer.putShort((short) cell);
+                buffer.put((byte) value);
+            }
+        }
+
+        out.write(buffer.array());
+    }
+
+    /**
+     * Reads a board written by {@link #serializeDelta(Sudoku, OutputStream)} against the same base.
+     */
+    public static Sudoku deserializeDelta(Sudoku base, ByteBuffer in) {
+        final BitPackedArray array = base.array.copy();
+        final int count = in.getShort();
+
+        for (int k = 0; k < count; ++k) {
+            final int cell = in.getShort();
+            final long value = in.get();
+
+            if (cell < 0 || cell >= array.size() || array.getUnchecked(cell) != 0)
+                throw new IllegalArgumentException("Invalid assignment of cell " + cell);
+
+            array.set(cell, value);
+        }
+
+        return new Sudoku(base.geometry, array);
+    }
+
+    /**
+     * Moves past a board written by {@link #serializeDelta(Sudoku, OutputStream)} without its base.
+     */
+    public static void skipDelta(ByteBuffer in) {
+        final int count = in.getShort();
+        in.position(in.position() + 3 * count);
     }
 
     @Override
@@ -1,10 +1,13 @@
 package com.nvankempen.csc375;
 
+import com.nvankempen.csc375.heuristics.BranchingHeuristic;
+import com.nvankempen.csc375.heuristics.CutoffPolicy;
+import com.nvankempen.csc375.metrics.Metrics;
 import com.nvankempen.csc375.sockets.MainSocket;
-import com.nvankempen.underscore.utils.tuples.Doublet;
+import com.nvankempen.csc375.utils.CancellationToken;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.concurrent.CountedCompleter;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -12,30 +15,60 @@ import static com.nvankempen.csc375.Constants.*;
 
 public final class SudokuSolver extends CountedCompleter<Sudoku> {
 
+    private static final short UNCLAIMED = 0;
+    private static final short CLAIMED = 1;
+
     private final SudokuSolver parent;
     private final Sudoku sudoku;
     private final MainSocket socket;
     private final AtomicReference<Sudoku> solution;
-
-    private int getLocalDepth() {
-        if (parent == null) return 0;
-        else return 1 + parent.getLocalDepth();
-    }
+    private final CancellationToken token;
+    private final BranchingHeuristic heuristic;
+    private final CutoffPolicy cutoff;
+    private final int depth;
+    private final long start;
 
     public Sudoku getSudoku() {
         return sudoku;
     }
 
+    /**
+     * @return The board of the root of this task's tree, which the board of every task of the tree extends.
+     */
+    public Sudoku getRootSudoku() {
+        return ((SudokuSolver) getRoot()).sudoku;
+    }
+
+    /**
+     * @return The token shared by every task of this solver's tree, local or remote.
+     */
+    public CancellationToken getToken() {
+        return token;
+    }
+
     public SudokuSolver(Sudoku sudoku, MainSocket socket) {
-        this(null, sudoku, new AtomicReference<>(), socket);
+        this(sudoku, socket, BranchingHeuristic.DEFAULT);
+    }
+
+    public SudokuSolver(Sudoku sudoku, MainSocket socket, BranchingHeuristic heuristic) {
+        this(sudoku, socket, heuristic, CutoffPolicy.DEFAULT);
     }
 
-    private SudokuSolver(SudokuSolver parent, Sudoku sudoku, AtomicReference<Sudoku> solution, MainSocket socket) {
+    public SudokuSolver(Sudoku sudoku, MainSocket socket, BranchingHeuristic heuristic, CutoffPolicy cutoff) {
+        this(null, sudoku.copy(), new AtomicReference<>(), new CancellationToken(), socket, heuristic, cutoff);
+    }
+
+    private SudokuSolver(SudokuSolver parent, Sudoku sudoku, AtomicReference<Sudoku> solution, CancellationToken token, MainSocket socket, BranchingHeuristic heuristic, CutoffPolicy cutoff) {
         super(parent);
         this.parent = parent;
         this.sudoku = sudoku;
         this.solution = solution;
+        this.token = token;
         this.socket = socket;
+        this.heuristic = heuristic;
+        this.cutoff = cutoff;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        this.start = parent == null ? System.nanoTime() : parent.start;
     }
 
     @Override
@@ -43,25 +76,63 @@ public final class SudokuSolver extends CountedCompleter<Sudoku> {
         return solution.get();
     }
 
+    /**
+     * Claims this task for execution, locally or on a remote node. A task can be both forked here and stolen by a
+     * remote node, only the first claim succeeds.
+     */
+    public boolean claim() {
+        return compareAndSetForkJoinTaskTag(UNCLAIMED, CLAIMED);
+    }
+
+    public boolean isClaimed() {
+        return getForkJoinTaskTag() == CLAIMED;
+    }
+
+    /**
+     * Gives up a claim, so the task can be executed again after it could not be run where it was claimed for.
+     */
+    public void unclaim() {
+        setForkJoinTaskTag(UNCLAIMED);
+    }
+
     @Override
     public void compute() {
-        if (solution.get() != null) return;
+        // A stolen task is still in its local queue, the remote node completes it.
+        if (!claim()) return;
 
-        if (sudoku.remaining() < THRESHOLD) {
-            Sudoku result = sequentialSolve(sudoku);
-            if(result != null && solution.compareAndSet(null, result))
-                quietlyCompleteRoot();
-        } else {
-            final Doublet<Integer, Integer> location = nextEmptyLocation(sudoku);
-            final List<Long> possibilities = sudoku.whatCanWeSetAt(location.getA(), location.getB());
+        // Tasks that were forked before the tree got cancelled are still queued, drop them without any work.
+        if (token.isCancelled()) {
+            quietlyCompleteRoot();
+            return;
+        }
 
-            setPendingCount(possibilities.size());
-            for (long possibility : possibilities) {
-                final Sudoku copy = sudoku.set(location.getA(), location.getB(), possibility);
-                final SudokuSolver task = new SudokuSolver(this, copy, solution, socket);
+        // Children are propagated by their parent before being forked, only the root is left to do.
+        if (parent == null && !Expansion.root(sudoku)) {
+            tryComplete();
+            return;
+        }
 
-                if (!(socket != null && sudoku.remaining() > CLUSTER_THRESHOLD && getLocalDepth() > 5 && socket.tryAskingForHelp(task)))
-                    task.fork();
+        Metrics.nodeExpanded();
+
+        if (sudoku.remaining() == 0 || cutoff.isSequential(sudoku, depth)) {
+            found(IterativeSolver.solve(sudoku, heuristic, token));
+        } else {
+            final List<SudokuSolver> children = new ArrayList<>();
+            for (final Sudoku child : Expansion.children(sudoku, heuristic, token))
+                children.add(new SudokuSolver(this, child, solution, token, socket, heuristic, cutoff));
+
+            // Shipped children may complete as soon as they are sent, account for all of them first.
+            addToPendingCount(children.size());
+
+            // The whole frontier is offered to helpers at once, whatever they do not take is solved here.
+            int shipped = 0;
+            if (socket != null && sudoku.remaining() > CLUSTER_THRESHOLD && depth > 5)
+                shipped = socket.tryAskingForHelp(children);
+
+            for (int k = shipped; k < children.size(); ++k) {
+                if (socket != null && sudoku.remaining() > CLUSTER_THRESHOLD) socket.offer(children.get(k));
+                Metrics.taskForked();
+                children.get(k).fork();
             }
         }
 
@@ -69,34 +140,39 @@ public final class SudokuSolver extends CountedCompleter<Sudoku> {
     }
 
     public static Sudoku sequentialSolve(Sudoku sudoku) {
-        if (sudoku.remaining() == 0) {
-            return sudoku.isValid() ? sudoku : null;
-        }
-
-        final Doublet<Integer, Integer> location = nextEmptyLocation(sudoku);
-        final List<Long> possibilities = sudoku.whatCanWeSetAt(location.getA(), location.getB());
+        return sequentialSolve(sudoku, BranchingHeuristic.DEFAULT);
+    }
 
-        for (long possibility : possibilities) {
-            final Sudoku solution = sequentialSolve(sudoku.set(location.getA(), location.getB(), possibility));
-            if (solution != null) return solution;
-        }
+    public static Sudoku sequentialSolve(Sudoku sudoku, BranchingHeuristic heuristic) {
+        return sequentialSolve(sudoku, heuristic, new CancellationToken());
+    }
 
-        return null;
+    /**
+     * @param token Checked at every node, the search gives up and returns null once it is cancelled.
+     */
+    public static Sudoku sequentialSolve(Sudoku sudoku, BranchingHeuristic heuristic, CancellationToken token) {
+        return IterativeSolver.solve(sudoku, heuristic, token);
     }
 
-    private static Doublet<Integer, Integer> nextEmptyLocation(Sudoku sudoku) {
-        for (int i = 0; i < N * N; ++i) {
-            for (int j = 0; j < N * N; ++j) {
-                if (!sudoku.isSet(i, j)) return new Doublet<>(i, j);
-            }
-        }
+    public void markAsCompleted(Sudoku result) {
+        found(result);
+        tryComplete();
+    }
 
-        throw new NoSuchElementException();
+    /**
+     * Stops every task of this solver's tree, including the ones running on remote helpers.
+     * The tree completes as soon as possible, with whatever solution was found so far.
+     */
+    public void cancel() {
+        token.cancel();
+        if (socket != null) socket.cancel(token);
+        quietlyCompleteRoot();
     }
 
-    public void markAsCompleted(Sudoku result) {
-        if(result != null && solution.compareAndSet(null, result))
-            quietlyCompleteRoot();
-        else tryComplete();
+    private void found(Sudoku result) {
+        if (result != null && solution.compareAndSet(null, result)) {
+            Metrics.solutionFound(System.nanoTime() - start);
+            cancel();
+        }
     }
 }
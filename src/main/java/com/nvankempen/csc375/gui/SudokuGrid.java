@@ -5,8 +5,6 @@ import com.nvankempen.csc375.Sudoku;
 import javax.swing.*;
 import java.awt.*;
 
-import static com.nvankempen.csc375.Constants.N;
-
 public final class SudokuGrid extends JPanel {
     private Sudoku sudoku;
 
@@ -24,9 +22,10 @@ public final class SudokuGrid extends JPanel {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         final Graphics2D graphics = (Graphics2D) g.create();
+        final int size = sudoku.size();
 
-        for (int i = 0; i < N * N; ++i) {
-            for (int j = 0; j < N * N; ++j) {
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
                 if (sudoku.get(i, j) != 0) {
                     graphics.drawString(
                             Long.toString(sudoku.get(i, j)),
@@ -38,11 +37,11 @@ public final class SudokuGrid extends JPanel {
         }
 
         graphics.setColor(Color.DARK_GRAY);
-        for (int i = 0; i <= N * N; ++i) {
+        for (int i = 0; i <= size; ++i) {
             graphics.drawLine(0, i * SCALE, super.getWidth(), i * SCALE);
             graphics.drawLine(i * SCALE, 0, i * SCALE, super.getHeight());
 
-            if (i % N == 0) {
+            if (i % sudoku.order() == 0) {
                 graphics.drawLine(0, i * SCALE + 1, super.getWidth(), i * SCALE + 1);
                 graphics.drawLine(0, i * SCALE - 1, super.getWidth(), i * SCALE - 1);
                 graphics.drawLine(i * SCALE + 1, 0, i * SCALE + 1, super.getHeight());
@@ -55,11 +54,13 @@ public final class SudokuGrid extends JPanel {
 
     @Override
     public Dimension getPreferredSize() {
-        return new Dimension(N * N * SCALE + 1, N * N * SCALE + 1);
+        return new Dimension(sudoku.size() * SCALE + 1, sudoku.size() * SCALE + 1);
     }
 
     public void updateSudoku(Sudoku sudoku) {
+        final boolean resized = sudoku.size() != this.sudoku.size();
         this.sudoku = sudoku;
+        if (resized) revalidate();
         repaint();
     }
 
@@ -73,7 +74,7 @@ public final class SudokuGrid extends JPanel {
     }
 
     public void clear() {
-        sudoku = new Sudoku();
+        sudoku = new Sudoku(sudoku.order());
         repaint();
     }
 }
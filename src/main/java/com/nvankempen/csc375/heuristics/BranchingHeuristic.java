@@ -0,0 +1,20 @@
+package com.nvankempen.csc375.heuristics;
+
+import com.nvankempen.csc375.Sudoku;
+
+/**
+ * Decides which empty cell the solvers branch on next.
+ * Cells are returned packed, see {@link com.nvankempen.csc375.Geometry#cell(int, int)},
+ * to avoid allocating a pair at every node.
+ */
+public interface BranchingHeuristic {
+    int NONE = -1;
+
+    BranchingHeuristic DEFAULT = BranchingHeuristics.MOST_CONSTRAINED;
+
+    /**
+     * @param sudoku The board to branch on.
+     * @return The packed index of the cell to branch on, or {@link #NONE} if the board is full.
+     */
+    int select(Sudoku sudoku);
+}
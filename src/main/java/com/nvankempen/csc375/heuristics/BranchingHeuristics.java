@@ -0,0 +1,53 @@
+package com.nvankempen.csc375.heuristics;
+
+import com.nvankempen.csc375.Geometry;
+import com.nvankempen.csc375.Sudoku;
+
+public enum BranchingHeuristics implements BranchingHeuristic {
+
+    /**
+     * The first empty cell, in row-major order.
+     */
+    FIRST_EMPTY {
+        @Override
+        public int select(Sudoku sudoku) {
+            final Geometry geometry = sudoku.geometry();
+
+            for (int i = 0; i < geometry.size(); ++i) {
+                for (int j = 0; j < geometry.size(); ++j) {
+                    if (!sudoku.isSet(i, j)) return geometry.cell(i, j);
+                }
+            }
+
+            return NONE;
+        }
+    },
+
+    /**
+     * The empty cell with the fewest candidates, ties broken in row-major order.
+     * Stops early on a cell with zero or one candidate, nothing can beat it.
+     */
+    MOST_CONSTRAINED {
+        @Override
+        public int select(Sudoku sudoku) {
+            final Geometry geometry = sudoku.geometry();
+            int best = NONE;
+            int min = Integer.MAX_VALUE;
+
+            for (int i = 0; i < geometry.size(); ++i) {
+                for (int j = 0; j < geometry.size(); ++j) {
+                    if (sudoku.isSet(i, j)) continue;
+
+                    final int count = Long.bitCount(sudoku.candidates(i, j));
+                    if (count < min) {
+                        min = count;
+                        best = geometry.cell(i, j);
+                        if (count <= 1) return best;
+                    }
+                }
+            }
+
+            return best;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.nvankempen.csc375.heuristics;
+
+import com.nvankempen.csc375.Sudoku;
+
+import java.util.concurrent.ForkJoinTask;
+
+import static com.nvankempen.csc375.Constants.SURPLUS_THRESHOLD;
+
+/**
+ * Decides when a fork/join task should stop splitting and solve its subtree sequentially.
+ * The default policy can be overridden with the sudoku.cutoff system property, see {@link #parse(String)}.
+ */
+public interface CutoffPolicy {
+
+    CutoffPolicy DEFAULT = fromProperty();
+
+    /**
+     * @param sudoku The board of the task, already propagated.
+     * @param depth  The depth of the task in the local fork/join tree, 0 for the root.
+     * @return true if the task should not fork any more.
+     */
+    boolean isSequential(Sudoku sudoku, int depth);
+
+    default CutoffPolicy or(CutoffPolicy other) {
+        return (sudoku, depth) -> isSequential(sudoku, depth) || other.isSequential(sudoku, depth);
+    }
+
+    /**
+     * Go sequential once fewer than the given number of cells are left empty.
+     */
+    static CutoffPolicy remaining(int threshold) {
+        return (sudoku, depth) -> sudoku.remaining() < threshold;
+    }
+
+    /**
+     * Go sequential below the given depth.
+     */
+    static CutoffPolicy depth(int max) {
+        return (sudoku, depth) -> depth >= max;
+    }
+
+    /**
+     * Go sequential when the current worker already has more than the given number of tasks queued that no other
+     * worker stole. This adapts to the load of the pool: idle workers steal and keep the surplus low.
+     */
+    static CutoffPolicy surplus(int max) {
+        return (sudoku, depth) -> ForkJoinTask.getSurplusQueuedTaskCount() > max;
+    }
+
+    /**
+     * Go sequential once the estimated size of the subtree, the product of the candidate counts of every empty
+     * cell, drops below 2^bits.
+     */
+    static CutoffPolicy size(int bits) {
+        return (sudoku, depth) -> {
+            int estimate = 0;
+
+            for (int i = 0; i < sudoku.size() && estimate < bits; ++i) {
+                for (int j = 0; j < sudoku.size(); ++j) {
+                    if (!sudoku.isSet(i, j))
+                        estimate += Long.SIZE - 1 - Long.numberOfLeadingZeros(Long.bitCount(sudoku.candidates(i, j)));
+                }
+            }
+
+            return estimate < bits;
+        };
+    }
+
+    /**
+     * @return The policy the sudoku.cutoff system property describes, or the surplus based one if it is not set. A
+     * malformed property is reported and the surplus based policy used instead, rather than failing the first class
+     * that touches this interface.
+     */
+    private static CutoffPolicy fromProperty() {
+        final CutoffPolicy fallback = surplus(SURPLUS_THRESHOLD);
+        final String specification = System.getProperty("sudoku.cutoff");
+        if (specification == null) return fallback;
+
+        try {
+            return parse(specification);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring sudoku.cutoff=" + specification + ": " + e.getMessage());
+            return fallback;
+        }
+    }
+
+    /**
+     * Parses a comma separated list of policies, combined with {@link #or(CutoffPolicy)}.
+     * Each policy is written name:value, for example "surplus:3,remaining:20,depth:12,size:16".
+     */
+    static CutoffPolicy parse(String specification) {
+        CutoffPolicy policy = null;
+
+        for (final String part : specification.split(",")) {
+            final String[] tokens = part.trim().split(":");
+            if (tokens.length != 2)
+                throw new IllegalArgumentException("Invalid cutoff policy: " + part);
+
+            final int value = Integer.parseInt(tokens[1].trim());
+            final CutoffPolicy next;
+
+            switch (tokens[0].trim()) {
+                case "remaining":
+                    next = remaining(value);
+                    break;
+                case "depth":
+                    next = depth(value);
+                    break;
+                case "surplus":
+                    next = surplus(value);
+                    break;
+                case "size":
+                    next = size(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown cutoff policy: " + tokens[0]);
+            }
+
+            policy = policy == null ? next : policy.or(next);
+        }
+
+        if (policy == null)
+            throw new IllegalArgumentException("Empty cutoff policy");
+
+        return policy;
+    }
+}
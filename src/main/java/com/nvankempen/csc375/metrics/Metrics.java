@@ -0,0 +1,189 @@
+package com.nvankempen.csc375.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low overhead solver counters, disabled by default. Run with -Dsudoku.metrics=true to enable them.
+ * The flag is a static final constant, so when disabled the JIT removes every call site entirely.
+ * When enabled, the counters are registered as an MXBean and logged every sudoku.metrics.interval seconds (10 by
+ * default, 0 to disable the log line).
+ */
+public final class Metrics implements SolverMetricsMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("sudoku.metrics");
+    public static final String OBJECT_NAME = "com.nvankempen.csc375:type=SolverMetrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder copies = new LongAdder();
+    private final LongAdder forks = new LongAdder();
+    private final LongAdder shipped = new LongAdder();
+    private final LongAdder remoteSuccesses = new LongAdder();
+    private final LongAdder remoteFailures = new LongAdder();
+    private final LongAdder solutions = new LongAdder();
+    private final LongAdder timeToFirstSolution = new LongAdder();
+    private final AtomicLong lastTimeToFirstSolution = new AtomicLong();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+
+            final long interval = Long.getLong("sudoku.metrics.interval", 10);
+            if (interval > 0) {
+                final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+                executor.scheduleAtFixedRate(() -> System.out.println(INSTANCE), interval, interval, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private Metrics() {
+
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    public static void nodeExpanded() {
+        if (ENABLED) INSTANCE.nodes.increment();
+    }
+
+    public static void sudokuCopied() {
+        if (ENABLED) INSTANCE.copies.increment();
+    }
+
+    public static void taskForked() {
+        if (ENABLED) INSTANCE.forks.increment();
+    }
+
+    public static void taskShipped() {
+        if (ENABLED) INSTANCE.shipped.increment();
+    }
+
+    public static void remoteSuccess() {
+        if (ENABLED) INSTANCE.remoteSuccesses.increment();
+    }
+
+    public static void remoteFailure() {
+        if (ENABLED) INSTANCE.remoteFailures.increment();
+    }
+
+    /**
+     * @param elapsed Nanoseconds between the start of a solver and its first solution.
+     */
+    public static void solutionFound(long elapsed) {
+        if (ENABLED) {
+            INSTANCE.solutions.increment();
+            INSTANCE.timeToFirstSolution.add(elapsed);
+            INSTANCE.lastTimeToFirstSolution.set(elapsed);
+        }
+    }
+
+    public static void cacheHit() {
+        if (ENABLED) INSTANCE.cacheHits.increment();
+    }
+
+    public static void cacheMiss() {
+        if (ENABLED) INSTANCE.cacheMisses.increment();
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getSudokuCopies() {
+        return copies.sum();
+    }
+
+    @Override
+    public long getTasksForked() {
+        return forks.sum();
+    }
+
+    @Override
+    public long getTasksShipped() {
+        return shipped.sum();
+    }
+
+    @Override
+    public long getRemoteSuccesses() {
+        return remoteSuccesses.sum();
+    }
+
+    @Override
+    public long getRemoteFailures() {
+        return remoteFailures.sum();
+    }
+
+    @Override
+    public long getSolutions() {
+        return solutions.sum();
+    }
+
+    @Override
+    public double getMeanTimeToFirstSolution() {
+        final long count = solutions.sum();
+        return count == 0 ? 0 : timeToFirstSolution.sum() / 1e6 / count;
+    }
+
+    @Override
+    public double getLastTimeToFirstSolution() {
+        return lastTimeToFirstSolution.get() / 1e6;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public void reset() {
+        nodes.reset();
+        copies.reset();
+        forks.reset();
+        shipped.reset();
+        remoteSuccesses.reset();
+        remoteFailures.reset();
+        solutions.reset();
+        timeToFirstSolution.reset();
+        lastTimeToFirstSolution.set(0);
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Metrics: %d nodes, %d copies, %d forks, %d shipped, %d/%d remote successes/failures, "
+                        + "%d solutions, %.3f ms mean time to first solution, %d/%d cache hits/misses.",
+                getNodesExpanded(), getSudokuCopies(), getTasksForked(), getTasksShipped(),
+                getRemoteSuccesses(), getRemoteFailures(), getSolutions(), getMeanTimeToFirstSolution(),
+                getCacheHits(), getCacheMisses()
+        );
+    }
+}
@@ -0,0 +1,36 @@
+package com.nvankempen.csc375.metrics;
+
+/**
+ * Solver counters, as exposed through JMX under {@link Metrics#OBJECT_NAME}.
+ */
+public interface SolverMetricsMXBean {
+    long getNodesExpanded();
+
+    long getSudokuCopies();
+
+    long getTasksForked();
+
+    long getTasksShipped();
+
+    long getRemoteSuccesses();
+
+    long getRemoteFailures();
+
+    long getSolutions();
+
+    /**
+     * @return The mean time between the start of a solver and its first solution, in milliseconds.
+     */
+    double getMeanTimeToFirstSolution();
+
+    /**
+     * @return The time between the start of the last solver that found a solution and that solution, in milliseconds.
+     */
+    double getLastTimeToFirstSolution();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    void reset();
+}
@@ -0,0 +1,37 @@
+package com.nvankempen.csc375.sockets;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of a fixed capacity, so receiving a packet does not allocate.
+ * At most max buffers are kept around, any extra released buffer is left to the GC.
+ */
+final class BufferPool {
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int capacity;
+    private final int max;
+
+    BufferPool(int capacity, int max) {
+        this.capacity = capacity;
+        this.max = max;
+    }
+
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(capacity);
+
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= max) {
+            buffer.clear();
+            buffers.add(buffer);
+        } else pooled.decrementAndGet();
+    }
+}
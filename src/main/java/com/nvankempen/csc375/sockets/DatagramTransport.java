@@ -0,0 +1,140 @@
+package com.nvankempen.csc375.sockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking UDP endpoint. A single event loop thread waits on a {@link Selector} and drains every datagram
+ * available into pooled direct buffers, then hands them to a bounded pool of workers.
+ * No thread is started per packet and there is no receive timeout to poll on.
+ */
+final class DatagramTransport {
+
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * Called on a worker thread. The buffer is positioned at the start of the payload and is recycled as soon as
+         * this returns, so it must not be kept.
+         * <p>
+         * Must not block: workers are few and their queue is bounded, packets arriving while it is full are dropped.
+         * Long running work, solving in particular, is handed to another executor.
+         */
+        void handle(ByteBuffer buffer, InetSocketAddress address) throws IOException;
+    }
+
+    private static final int SEND_ATTEMPTS = 100;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final BufferPool buffers;
+    private final ExecutorService workers;
+    private final Handler handler;
+
+    DatagramTransport(int port, int packetSize, int threads, Handler handler) throws IOException {
+        this.handler = handler;
+        this.buffers = new BufferPool(packetSize, 4 * threads);
+
+        final AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "socket-worker-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        final Thread loop = new Thread(this::loop, "socket-event-loop");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    private void loop() {
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+
+                // Drain everything that is available, the selector only tells us there is at least one datagram.
+                while (true) {
+                    final ByteBuffer buffer = buffers.acquire();
+                    final SocketAddress address = channel.receive(buffer);
+
+                    if (address == null) {
+                        buffers.release(buffer);
+                        break;
+                    }
+
+                    buffer.flip();
+                    dispatch(buffer, (InetSocketAddress) address);
+                }
+            } catch (ClosedChannelException | ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void dispatch(ByteBuffer buffer, InetSocketAddress address) {
+        try {
+            workers.execute(() -> {
+                try {
+                    if (buffer.hasRemaining()) handler.handle(buffer, address);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    buffers.release(buffer);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.out.println("Workers are saturated, dropping packet from: " + address);
+            buffers.release(buffer);
+        }
+    }
+
+    void send(ByteBuffer buffer, InetSocketAddress address) throws IOException {
+        // The channel is non-blocking, a full send buffer makes send return 0 instead of waiting.
+        for (int attempt = 0; attempt < SEND_ATTEMPTS; ++attempt) {
+            if (channel.send(buffer, address) != 0) return;
+            Thread.yield();
+        }
+
+        System.out.println("Send buffer is full, dropping packet to: " + address);
+    }
+
+    void send(byte[] data, int length, InetSocketAddress address) throws IOException {
+        send(ByteBuffer.wrap(data, 0, length), address);
+    }
+
+    void close() throws IOException {
+        channel.close();
+        selector.close();
+        workers.shutdownNow();
+    }
+}
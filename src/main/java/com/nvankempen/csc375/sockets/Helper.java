@@ -0,0 +1,116 @@
+package com.nvankempen.csc375.sockets;
+
+import com.nvankempen.underscore.utils.tuples.Doublet;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A remote node that accepted to solve subtrees for us, along with the number of subtrees it can work on at once,
+ * as reported in its handshake, and how well it has been doing so far.
+ */
+final class Helper {
+    private static final int REMEMBERED_JOBS = 64;
+
+    // Weight of the newest sample in the moving averages.
+    private static final double ALPHA = 0.2;
+
+    private final Doublet<InetAddress, Integer> peer;
+    private final long epoch;
+    private final int capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Moving averages of the round trip time and of the time to solve a subtree, in nanoseconds. 0 until measured.
+    private double latency = 0;
+    private double service = 0;
+
+    // Jobs whose root board this helper is known to have received, so their tasks can be sent as deltas.
+    private final Set<Long> jobs = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > REMEMBERED_JOBS;
+        }
+    }));
+
+    /**
+     * @param epoch Identifies the process behind the peer's address, a restarted helper is a new helper.
+     */
+    Helper(Doublet<InetAddress, Integer> peer, long epoch, int capacity) {
+        this.peer = peer;
+        this.epoch = epoch;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    Doublet<InetAddress, Integer> peer() {
+        return peer;
+    }
+
+    InetAddress address() {
+        return peer.getA();
+    }
+
+    int port() {
+        return peer.getB();
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return The number of slots reserved in this helper's window, at most the wanted number and 0 if the window is
+     * full. They must later be given back with {@link #release(int)}.
+     */
+    int acquire(int wanted) {
+        while (true) {
+            final int current = inFlight.get();
+            final int acquired = Math.min(wanted, capacity - current);
+            if (acquired <= 0) return 0;
+            if (inFlight.compareAndSet(current, current + acquired)) return acquired;
+        }
+    }
+
+    void release(int slots) {
+        inFlight.addAndGet(-slots);
+    }
+
+    synchronized void latency(long nanos) {
+        latency = latency == 0 ? nanos : (1 - ALPHA) * latency + ALPHA * nanos;
+    }
+
+    synchronized void solved(long nanos) {
+        service = service == 0 ? nanos : (1 - ALPHA) * service + ALPHA * nanos;
+    }
+
+    /**
+     * @return The expected time for this helper to answer a new subtree, in nanoseconds: a round trip plus its mean
+     * time per subtree given its capacity. Helpers that were not measured yet come first, so they get measured.
+     */
+    synchronized double cost() {
+        return latency + service / capacity;
+    }
+
+    boolean knows(long job) {
+        return jobs.contains(job);
+    }
+
+    void learn(long job) {
+        jobs.add(job);
+    }
+
+    void forget(long job) {
+        jobs.remove(job);
+    }
+}
@@ -1,17 +1,30 @@
 package com.nvankempen.csc375.sockets;
 
-
+import com.nvankempen.csc375.SolverService;
 import com.nvankempen.csc375.Sudoku;
 import com.nvankempen.csc375.SudokuSolver;
+import com.nvankempen.csc375.metrics.Metrics;
+import com.nvankempen.csc375.utils.CancellationToken;
 import com.nvankempen.underscore.utils.tuples.Doublet;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.nvankempen.csc375.Constants.MAX_PACKET_SIZE;
 
@@ -21,104 +34,712 @@ public final class MainSocket {
 
     // OPCODES
     private static final byte HANDSHAKE = 13;
-    private static final byte FAIL = 17;
-    private static final byte SUCCESS = 31;
+    private static final byte RESULTS = 37;
     private static final byte SUDOKU = 71;
+    private static final byte CANCEL = 97;
+    private static final byte STEAL = 101;
+    private static final byte PING = 103;
+    private static final byte PONG = 107;
+    private static final byte SOLVE = 109;
+    private static final byte SOLVED = 113;
+    private static final byte FORGET = 127;
 
-    private final Queue<Doublet<InetAddress, Integer>> helpers = new ConcurrentLinkedQueue<>();
-    private final Map<Doublet<InetAddress, Integer>, SudokuSolver> tasks = new ConcurrentHashMap<>();
-    private final DatagramSocket socket;
+    // How often an idle node asks one of its peers for work, in milliseconds.
+    private static final long STEAL_INTERVAL = 100;
 
-    public MainSocket() throws SocketException {
-        socket = new DatagramSocket(PORT);
-        socket.setSoTimeout(50);
-        System.out.println("Listening for connections on port " + PORT + ".");
+    // How often peers are pinged, in milliseconds. A peer that does not acknowledge a ping is considered dead. Pings
+    // also list the tasks sent to the peer, it answers with the ones whose results it gave up on delivering.
+    private static final long HEARTBEAT_INTERVAL = 1000;
 
-        new Thread(() -> {
-            while (true) {
-                final DatagramPacket packet = new DatagramPacket(new byte[MAX_PACKET_SIZE], MAX_PACKET_SIZE);
+    // Number of subtrees this node accepts at once from a single peer, reported in handshakes.
+    private static final int CAPACITY = Integer.getInteger("sudoku.capacity", Runtime.getRuntime().availableProcessors());
 
-                try {
-                    socket.receive(packet);
-                    new Thread(() -> {
-                        try {
-                            handle(packet);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }).start();
-                } catch (SocketTimeoutException ignored) {
+    // Time a submitter waits for an answer past the deadline of its job, in milliseconds.
+    private static final long SUBMIT_MARGIN = 5000;
 
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+    // Root boards of the jobs of other nodes kept around to decode their tasks.
+    private static final int REMEMBERED_JOBS = 1024;
+
+    // Flags of the entries of a RESULTS message. Solutions are sent in whichever encoding is the smallest.
+    private static final byte FAILURE = 0;
+    private static final byte DELTA = 1;
+    private static final byte FULL = 2;
+
+    // Sent in handshakes and pongs, so peers notice when this node restarted on the same address.
+    private final long epoch = new Random().nextLong();
+
+    private final List<Helper> helpers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<Long, Shipment> tasks = new ConcurrentHashMap<>();
+    private final Map<Doublet<Doublet<InetAddress, Integer>, Long>, SudokuSolver> running = new ConcurrentHashMap<>();
+    private final Map<CancellationToken, Long> jobs = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<CancellationToken, Integer> shares = new ConcurrentHashMap<>();
+    // In access order, so the roots of jobs still sending work are the last evicted.
+    private final Map<Doublet<Doublet<InetAddress, Integer>, Long>, Sudoku> roots = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Doublet<Doublet<InetAddress, Integer>, Long>, Sudoku> eldest) {
+            return size() > REMEMBERED_JOBS;
+        }
+    });
+    private final Map<Long, Doublet<Sudoku, CompletableFuture<Sudoku>>> submissions = new ConcurrentHashMap<>();
+    private volatile SolverService service;
+    private final Deque<Doublet<SudokuSolver, ForkJoinPool>> stealable = new ConcurrentLinkedDeque<>();
+    private final ReliableTransport transport;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "socket-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MainSocket() throws IOException {
+        this(PORT);
+    }
+
+    /**
+     * @param port The UDP port to listen on, 0 for any free port.
+     */
+    public MainSocket(int port) throws IOException {
+        // Remote work is solved on the common pool, workers only decode messages and start it.
+        final int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        transport = new ReliableTransport(port, MAX_PACKET_SIZE, threads, this::handle);
+        System.out.println("Listening for connections on port " + transport.getPort() + ".");
+
+        timer.scheduleWithFixedDelay(this::steal, STEAL_INTERVAL, STEAL_INTERVAL, TimeUnit.MILLISECONDS);
+        timer.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public int getPort() throws IOException {
+        return transport.getPort();
+    }
+
+    /**
+     * Accepts puzzles submitted by other nodes with {@link #submit(InetAddress, int, Sudoku, int, long)}, and solves
+     * them on the given service.
+     */
+    public void serve(SolverService service) {
+        this.service = service;
+    }
+
+    /**
+     * Submits a puzzle to the solver service of another node.
+     *
+     * @param priority Jobs with a higher priority are started first.
+     * @param timeout  The time the job may take, in milliseconds. 0 for no deadline.
+     * @return Completes with the solution, or null if there is none or none was found in time. Completes exceptionally
+     * if the node cannot be reached, does not run a service, or did not answer shortly after the deadline.
+     */
+    public CompletableFuture<Sudoku> submit(InetAddress address, int port, Sudoku sudoku, int priority, long timeout) {
+        final long id = requests.incrementAndGet();
+        final CompletableFuture<Sudoku> result = new CompletableFuture<>();
+        submissions.put(id, new Doublet<>(sudoku, result));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(SOLVE);
+        writeLong(out, id);
+        writeInt(out, priority);
+        writeLong(out, timeout);
+        try {
+            sudoku.serialize(out);
+        } catch (IOException e) {
+            submissions.remove(id);
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        try {
+            send(out, address, port, null, () -> {
+                if (submissions.remove(id) != null)
+                    result.completeExceptionally(new IOException("Could not reach " + address + ":" + port));
+            });
+        } catch (IllegalArgumentException e) {
+            submissions.remove(id);
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        // The answer itself may get lost, the job is known to be over once its deadline passed.
+        if (timeout > 0) {
+            timer.schedule(() -> {
+                if (submissions.remove(id) != null)
+                    result.completeExceptionally(new TimeoutException("No answer from " + address + ":" + port + " after " + (timeout + SUBMIT_MARGIN) + " ms"));
+            }, timeout + SUBMIT_MARGIN, TimeUnit.MILLISECONDS);
+        }
+
+        return result;
+    }
+
+    public void close() throws IOException {
+        timer.shutdownNow();
+        transport.close();
+    }
+
+    /**
+     * Ships a prefix of the given tasks to the best helper with room in its window, in a single message. As many tasks
+     * are shipped as the helper has free slots and as fit in a packet. If the helper is lost, the tasks are run locally
+     * instead, in the pool of the calling task.
+     *
+     * @return The number of tasks shipped, the caller is left to run the others.
+     */
+    public int tryAskingForHelp(List<SudokuSolver> batch) {
+        if (batch.isEmpty()) return 0;
+
+        final int share = share(batch.get(0).getToken());
+        if (share <= 0) return 0;
+
+        final Doublet<Helper, Integer> reservation = reserve(Math.min(batch.size(), share));
+        if (reservation == null) return 0;
+
+        final ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        return ship(reservation.getA(), reservation.getB(), batch, pool);
+    }
+
+    /**
+     * @return The number of subtrees the given tree may still ship. Helpers are split evenly between the trees
+     * currently shipping work, so a single large job cannot hold every helper while others wait.
+     */
+    private int share(CancellationToken token) {
+        final int capacity = helpers.stream().mapToInt(Helper::capacity).sum();
+        final Integer used = shares.get(token);
+        final int trees = shares.size() + (used == null ? 1 : 0);
+
+        return Math.max(1, capacity / trees) - (used == null ? 0 : used);
+    }
+
+    /**
+     * Gives back the slots a shipment held, once it was answered or its helper was lost.
+     */
+    private void settle(Shipment shipment) {
+        shipment.helper().release(1);
+        shares.computeIfPresent(shipment.task().getToken(), (token, used) -> used == 1 ? null : used - 1);
+    }
+
+    /**
+     * Makes a forked task available to idle nodes asking for work. Only the oldest ones are given away, the task keeps
+     * running locally unless it gets claimed for a remote node first.
+     */
+    public void offer(SudokuSolver task) {
+        if (helpers.isEmpty()) return;
+
+        // Tasks claimed locally or whose tree is over are pruned from both ends, the oldest get stolen by local
+        // workers and the newest popped by their owner.
+        Doublet<SudokuSolver, ForkJoinPool> entry;
+        while ((entry = stealable.peekFirst()) != null && isDone(entry.getA())) stealable.removeFirstOccurrence(entry);
+        while ((entry = stealable.peekLast()) != null && isDone(entry.getA())) stealable.removeLastOccurrence(entry);
+
+        final ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        stealable.addLast(new Doublet<>(task, pool));
+    }
+
+    /**
+     * @return True if the given task is no longer worth giving away: it was claimed, or its tree was solved, cancelled
+     * or ran past its deadline.
+     */
+    private static boolean isDone(SudokuSolver task) {
+        return task.isClaimed() || task.getToken().isCancelled();
+    }
+
+    /**
+     * Asks the next peer for work if the common pool, where remote work runs, has idle workers.
+     */
+    private void steal() {
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        final int idle = pool.getParallelism() - pool.getActiveThreadCount();
+        if (idle <= 0 || pool.hasQueuedSubmissions() || pool.getQueuedTaskCount() > 0) return;
+
+        final int count = helpers.size();
+        if (count == 0) return;
+
+        final Helper victim;
+        try {
+            victim = helpers.get(Math.floorMod(next.getAndIncrement(), count));
+        } catch (IndexOutOfBoundsException e) {
+            return;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(STEAL);
+        writeInt(out, idle);
+        send(out, victim.address(), victim.port());
+    }
+
+    /**
+     * Answers a steal request with the oldest offered tasks of a single tree, as many as the thief asked for and has
+     * room for in its window.
+     */
+    private void giveAway(Doublet<InetAddress, Integer> peer, int wanted) {
+        final Helper thief = helper(peer);
+        if (thief == null) return;
+
+        final int reserved = thief.acquire(wanted);
+        if (reserved == 0) return;
+
+        final List<SudokuSolver> batch = new ArrayList<>(reserved);
+        ForkJoinPool pool = null;
+
+        for (final Iterator<Doublet<SudokuSolver, ForkJoinPool>> iterator = stealable.iterator(); iterator.hasNext() && batch.size() < reserved; ) {
+            final Doublet<SudokuSolver, ForkJoinPool> entry = iterator.next();
+            final SudokuSolver task = entry.getA();
+
+            if (task.getToken().isCancelled()) {
+                iterator.remove();
+                continue;
             }
-        }).start();
+
+            if (!batch.isEmpty() && task.getToken() != batch.get(0).getToken()) continue;
+            if (task.claim()) {
+                batch.add(task);
+                pool = entry.getB();
+            }
+
+            if (task.isClaimed()) iterator.remove();
+        }
+
+        if (batch.isEmpty()) {
+            thief.release(reserved);
+            return;
+        }
+
+        System.out.println("Giving " + batch.size() + " subtrees away to " + thief.address());
+        final int shipped = ship(thief, reserved, batch, pool);
+
+        // Tasks that did not fit are still queued locally, but may have been skipped while claimed. Run them again,
+        // whichever copy runs first does the work.
+        for (int k = shipped; k < batch.size(); ++k) {
+            batch.get(k).unclaim();
+            pool.execute(batch.get(k));
+        }
     }
 
-    public boolean tryAskingForHelp(SudokuSolver task) {
-        final Doublet<InetAddress, Integer> peer = helpers.poll();
+    /**
+     * Sends up to the given number of reserved slots' worth of tasks, which must all belong to the same tree.
+     * Tasks that do not fit are left to the caller and their slots released, tasks that cannot be delivered are
+     * executed in the given pool.
+     */
+    private int ship(Helper helper, int reserved, List<SudokuSolver> batch, ForkJoinPool pool) {
+        // Every task of a tree extends its root board, which is only sent until the helper acknowledged it once.
+        final Sudoku root = batch.get(0).getRootSudoku();
 
-        if (peer != null) {
-            System.out.println("Sending work to " + peer.getA());
-            tasks.put(peer, task);
+        // A solution must fit in a RESULTS message in full, boards that are too large to be answered are kept here.
+        if (1 + Long.BYTES + 1 + root.serializedSize() > MAX_PACKET_SIZE) {
+            helper.release(reserved);
+            return 0;
+        }
 
-            try {
-                final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                out.write(SUDOKU);
-                task.getSudoku().serialize(out);
+        final long job = jobs.computeIfAbsent(batch.get(0).getToken(), token -> requests.incrementAndGet());
+        final boolean known = helper.knows(job);
 
-                socket.send(new DatagramPacket(out.toByteArray(), out.size(), peer.getA(), peer.getB()));
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long first = requests.getAndAdd(reserved);
+        out.write(SUDOKU);
+        writeLong(out, first);
+        writeLong(out, job);
+        out.write(known ? 0 : 1);
+
+        int count = 0;
+        try {
+            if (!known) root.serialize(out);
+
+            for (; count < reserved; ++count) {
+                final ByteArrayOutputStream board = new ByteArrayOutputStream();
+                batch.get(count).getSudoku().serializeDelta(root, board);
+                if (out.size() + board.size() > MAX_PACKET_SIZE) break;
+                board.writeTo(out);
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            count = 0;
+        }
+
+        helper.release(reserved - count);
+        if (count == 0) return 0;
 
-            return true;
-        } else return false;
+        System.out.println("Sending " + count + " subtrees to " + helper.address());
+        final List<Shipment> shipments = new ArrayList<>(count);
+        for (int k = 0; k < count; ++k) {
+            final Shipment shipment = new Shipment(helper, first, batch.get(k), pool);
+            shipments.add(shipment);
+            tasks.put(first + k, shipment);
+        }
+        shares.merge(batch.get(0).getToken(), count, Integer::sum);
+
+        send(out, helper.address(), helper.port(), () -> {
+            helper.learn(job);
+            shipments.forEach(Shipment::deliver);
+        }, () -> lost(helper));
+
+        for (int k = 0; k < count; ++k) Metrics.taskShipped();
+        return count;
     }
 
-    private void handle(DatagramPacket packet) throws IOException {
-        if (packet.getData().length == 0) return;
+    /**
+     * @return The helper with a free slot that is expected to answer first, or null if they are all busy, along with
+     * the number of slots reserved, at most the wanted number.
+     */
+    private Doublet<Helper, Integer> reserve(int wanted) {
+        final List<Helper> candidates = new ArrayList<>(helpers);
+        candidates.sort(Comparator.comparingDouble(Helper::cost));
+
+        for (final Helper helper : candidates) {
+            final int reserved = helper.acquire(wanted);
+            if (reserved > 0) return new Doublet<>(helper, reserved);
+        }
+
+        return null;
+    }
 
-        final InetAddress address = packet.getAddress();
-        final int port = packet.getPort();
+    /**
+     * Takes a helper that stopped answering out of rotation and runs every task it was working on locally.
+     */
+    private void lost(Helper helper) {
+        if (!helpers.remove(helper)) return;
+        System.out.println("Lost contact with " + helper.address() + ", solving its work locally.");
+
+        // Whoever removes a task owns its completion, a late answer from the helper is then ignored.
+        tasks.forEach((id, shipment) -> {
+            if (shipment.helper() == helper && tasks.remove(id, shipment)) {
+                settle(shipment);
+                Metrics.remoteFailure();
+                shipment.reschedule();
+            }
+        });
+    }
+
+    private void heartbeat() {
+        for (final Helper helper : helpers) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(PING);
+            writeLong(out, System.nanoTime());
+
+            // Only tasks the helper acknowledged, the others may not have reached it yet.
+            tasks.forEach((id, shipment) -> {
+                if (shipment.helper() == helper && shipment.isDelivered() && out.size() + Long.BYTES <= MAX_PACKET_SIZE)
+                    writeLong(out, id);
+            });
+
+            send(out, helper.address(), helper.port(), null, () -> lost(helper));
+        }
+    }
+
+    private Helper helper(Doublet<InetAddress, Integer> peer) {
+        for (final Helper helper : helpers)
+            if (helper.peer().equals(peer)) return helper;
+        return null;
+    }
+
+    /**
+     * Asks every helper working on a task of the given tree to stop. Helpers still answer with a failure once they
+     * stopped, which frees their slot as usual.
+     */
+    public void cancel(CancellationToken token) {
+        tasks.forEach((id, shipment) -> {
+            if (shipment.task().getToken() == token) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.write(CANCEL);
+                writeLong(out, id);
+                send(out, shipment.helper().address(), shipment.helper().port());
+            }
+        });
+    }
+
+    private void handle(ByteBuffer buffer, InetSocketAddress source) throws IOException {
+        final InetAddress address = source.getAddress();
+        final int port = source.getPort();
+        final Doublet<InetAddress, Integer> peer = new Doublet<>(address, port);
 
-        final ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
         final byte code = buffer.get();
 
         if (code == HANDSHAKE) {
-            final Doublet<InetAddress, Integer> peer = new Doublet<>(address, port);
-            if (!helpers.contains(peer)) {
-                System.out.println("Contacted by helper: " + address);
-                helpers.add(peer);
+            final int capacity = buffer.remaining() >= Integer.BYTES ? buffer.getInt() : 1;
+            final long incarnation = buffer.remaining() >= Long.BYTES ? buffer.getLong() : 0;
+
+            synchronized (helpers) {
+                final Helper known = helper(peer);
+                if (known != null && known.epoch() == incarnation) return;
+
+                // A new process on a known address lost whatever the previous one was working on, and its roots.
+                if (known != null) lost(known);
+
+                System.out.println("Contacted by helper: " + address + ", capacity " + capacity + ".");
+                helpers.add(new Helper(peer, incarnation, capacity));
                 sendHandshake(address, port);
             }
-        } else if (code == FAIL) {
-            System.out.println("Received fail from: " + address);
-            tasks.get(new Doublet<>(address, port)).markAsCompleted(null);
-            helpers.add(new Doublet<>(address, port));
-        } else if (code == SUCCESS) {
-            System.out.println("Received success from: " + address);
-            tasks.get(new Doublet<>(address, port)).markAsCompleted(Sudoku.deserialize(buffer));
-            helpers.add(new Doublet<>(address, port));
+        } else if (code == RESULTS) {
+            // Entries are a request ID and a flag, followed by the solution as a delta of the task or in full.
+            while (buffer.hasRemaining()) {
+                final long id = buffer.getLong();
+                final byte flag = buffer.get();
+                final Shipment shipment = tasks.remove(id);
+
+                // Answers for tasks that were already solved locally are ignored.
+                if (shipment == null) {
+                    if (flag == DELTA) Sudoku.skipDelta(buffer);
+                    else if (flag == FULL) Sudoku.deserialize(buffer);
+                    continue;
+                }
+
+                final Sudoku solution = flag == DELTA ? Sudoku.deserializeDelta(shipment.task().getSudoku(), buffer)
+                        : flag == FULL ? Sudoku.deserialize(buffer) : null;
+                System.out.println("Received " + (solution == null ? "fail" : "success") + " for " + id + " from: " + address);
+
+                // Cancelled subtrees answer early, they say nothing about the helper's speed.
+                if (!shipment.task().getToken().isCancelled()) shipment.helper().solved(shipment.elapsed());
+                settle(shipment);
+                if (solution == null) Metrics.remoteFailure();
+                else Metrics.remoteSuccess();
+                shipment.task().markAsCompleted(solution);
+            }
         } else if (code == SUDOKU) {
-            System.out.println("Received work from: " + address);
-            final SudokuSolver solver = new SudokuSolver(Sudoku.deserialize(buffer), this);
-            final Sudoku solution = solver.invoke();
+            // The boards of a batch are given consecutive request IDs, starting with the one in the header. They are
+            // sent as deltas of the job's root board, which comes first unless it was acknowledged before. Messages
+            // are acknowledged once handled, so a root that was acknowledged is already here unless it got evicted or
+            // this node restarted since.
+            final long first = buffer.getLong();
+            final long job = buffer.getLong();
+            final Doublet<Doublet<InetAddress, Integer>, Long> key = new Doublet<>(peer, job);
+
+            final List<Sudoku> boards = new ArrayList<>();
+            try {
+                final Sudoku root = buffer.get() != 0 ? Sudoku.deserialize(buffer) : roots.get(key);
+                if (root != null) {
+                    roots.put(key, root);
+                    while (buffer.hasRemaining()) boards.add(Sudoku.deserializeDelta(root, buffer));
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                boards.clear();
+            }
+
+            // The requester sends the root again with its next batch, and solves this one itself.
+            if (boards.isEmpty()) {
+                System.out.println("Cannot decode subtrees of job " + job + " from: " + address);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.write(FORGET);
+                writeLong(out, job);
+                writeLong(out, first);
+                send(out, address, port);
+                return;
+            }
+
+            System.out.println("Received " + boards.size() + " subtrees from: " + address);
+            solve(peer, first, boards);
+        } else if (code == FORGET) {
+            final long job = buffer.getLong();
+            final long batch = buffer.getLong();
+
+            final Helper helper = helper(peer);
+            if (helper != null) helper.forget(job);
+
+            tasks.forEach((id, shipment) -> {
+                if (shipment.batch() == batch && shipment.helper().peer().equals(peer) && tasks.remove(id, shipment)) {
+                    settle(shipment);
+                    Metrics.remoteFailure();
+                    shipment.reschedule();
+                }
+            });
+        } else if (code == PING) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(PONG);
+            writeLong(out, buffer.getLong());
+            writeLong(out, epoch);
+
+            // Tasks are known until their results are delivered, the others had their results lost.
+            while (buffer.remaining() >= Long.BYTES) {
+                final long id = buffer.getLong();
+                if (!running.containsKey(new Doublet<>(peer, id))) writeLong(out, id);
+            }
+
+            send(out, address, port);
+        } else if (code == PONG) {
+            final Helper helper = helper(peer);
+            if (helper == null) return;
+
+            final long sent = buffer.getLong();
+            if (buffer.remaining() >= Long.BYTES && buffer.getLong() != helper.epoch()) {
+                // Restarted without a handshake, its new incarnation is registered once it answers ours.
+                lost(helper);
+                sendHandshake(address, port);
+                return;
+            }
+
+            helper.latency(System.nanoTime() - sent);
+
+            while (buffer.remaining() >= Long.BYTES) {
+                final long id = buffer.getLong();
+                final Shipment shipment = tasks.get(id);
+
+                // Results that arrived since the ping was sent already removed their task.
+                if (shipment != null && shipment.helper() == helper && tasks.remove(id, shipment)) {
+                    System.out.println("Results for " + id + " were lost by " + address + ", solving it locally.");
+                    settle(shipment);
+                    Metrics.remoteFailure();
+                    shipment.reschedule();
+                }
+            }
+        } else if (code == SOLVE) {
+            final long id = buffer.getLong();
+            final int priority = buffer.getInt();
+            final long timeout = buffer.getLong();
+            final Sudoku sudoku = Sudoku.deserialize(buffer);
+
+            final SolverService service = this.service;
+            if (service == null) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.write(SOLVED);
+                writeLong(out, id);
+                out.write(2);
+                send(out, address, port);
+                return;
+            }
 
-            if (solution == null) socket.send(new DatagramPacket(new byte[]{FAIL}, 1, address, port));
-            else {
+            final SolverService.Job job = service.submit(sudoku, priority, timeout);
+            System.out.println("Job " + job.id() + " submitted by: " + address);
+
+            job.result().whenComplete((solution, error) -> {
                 final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                out.write(SUCCESS);
-                solution.serialize(out);
-                socket.send(new DatagramPacket(out.toByteArray(), out.size(), address, port));
+                out.write(SOLVED);
+                writeLong(out, id);
+                out.write(solution == null ? 0 : 1);
+                try {
+                    // The same size as the puzzle, which fit in a packet. A delta would not on sparse puzzles.
+                    if (solution != null) solution.serialize(out);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                send(out, address, port);
+            });
+        } else if (code == SOLVED) {
+            // The status is 0 when there is no solution, 1 when the solution follows and 2 if the node is no service.
+            final Doublet<Sudoku, CompletableFuture<Sudoku>> submission = submissions.remove(buffer.getLong());
+            if (submission == null) return;
+
+            final byte status = buffer.get();
+            if (status == 2) submission.getB().completeExceptionally(new IOException(address + " does not run a solver service"));
+            else submission.getB().complete(status == 0 ? null : Sudoku.deserialize(buffer));
+        } else if (code == STEAL) {
+            giveAway(peer, buffer.getInt());
+        } else if (code == CANCEL) {
+            final SudokuSolver solver = running.get(new Doublet<>(peer, buffer.getLong()));
+            if (solver != null) {
+                System.out.println("Work cancelled by: " + address);
+                solver.cancel();
             }
         } else System.out.println("Unknown code: " + code);
     }
 
+    /**
+     * Solves the boards of a batch in parallel, without blocking the calling thread. A solution is reported as soon as
+     * it is found so the requester can cancel the rest of its tree, failures are reported together. Boards stay in
+     * {@link #running} until their results were delivered or given up on.
+     */
+    private void solve(Doublet<InetAddress, Integer> peer, long first, List<Sudoku> boards) {
+        final Map<Long, Sudoku> tasks = new HashMap<>();
+        for (int k = 0; k < boards.size(); ++k) tasks.put(first + k, boards.get(k));
+
+        final List<Doublet<Long, Sudoku>> results = new ArrayList<>();
+        final AtomicInteger remaining = new AtomicInteger(boards.size());
+
+        for (int k = 0; k < boards.size(); ++k) {
+            final Doublet<Doublet<InetAddress, Integer>, Long> request = new Doublet<>(peer, first + k);
+            final SudokuSolver solver = new SudokuSolver(boards.get(k), this);
+
+            running.put(request, solver);
+            CompletableFuture.supplyAsync(solver::invoke, ForkJoinPool.commonPool()).whenComplete((solution, error) -> {
+                if (error != null) error.printStackTrace();
+
+                final List<Doublet<Long, Sudoku>> flush;
+                synchronized (results) {
+                    results.add(new Doublet<>(request.getB(), error == null ? solution : null));
+                    if (remaining.decrementAndGet() > 0 && (error != null || solution == null)) return;
+
+                    flush = new ArrayList<>(results);
+                    results.clear();
+                }
+
+                reply(peer, tasks, flush);
+            });
+        }
+    }
+
+    private void reply(Doublet<InetAddress, Integer> peer, Map<Long, Sudoku> tasks, List<Doublet<Long, Sudoku>> results) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RESULTS);
+        List<Long> ids = new ArrayList<>();
+
+        for (final Doublet<Long, Sudoku> result : results) {
+            final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            writeLong(entry, result.getA());
+
+            try {
+                if (result.getB() == null) {
+                    entry.write(FAILURE);
+                } else {
+                    // Deltas only win over sparse arrays when the task had few empty cells left.
+                    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+                    result.getB().serializeDelta(tasks.get(result.getA()), delta);
+
+                    if (delta.size() < result.getB().serializedSize()) {
+                        entry.write(DELTA);
+                        entry.write(delta.toByteArray(), 0, delta.size());
+                    } else {
+                        entry.write(FULL);
+                        result.getB().serialize(entry);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                answered(peer, Collections.singletonList(result.getA()));
+                continue;
+            }
+
+            if (out.size() > 1 && out.size() + entry.size() > MAX_PACKET_SIZE) {
+                final List<Long> sent = ids;
+                send(out, peer.getA(), peer.getB(), () -> answered(peer, sent), () -> answered(peer, sent));
+                out = new ByteArrayOutputStream();
+                out.write(RESULTS);
+                ids = new ArrayList<>();
+            }
+
+            out.write(entry.toByteArray(), 0, entry.size());
+            ids.add(result.getA());
+        }
+
+        final List<Long> sent = ids;
+        if (out.size() > 1) send(out, peer.getA(), peer.getB(), () -> answered(peer, sent), () -> answered(peer, sent));
+    }
+
+    /**
+     * Forgets requests whose results were delivered, or could not be. The requester's next ping reports the latter as
+     * unknown, and it solves them again.
+     */
+    private void answered(Doublet<InetAddress, Integer> peer, List<Long> ids) {
+        for (final long id : ids) running.remove(new Doublet<>(peer, id));
+    }
+
     public void sendHandshake(InetAddress address, int port) throws IOException {
         System.out.println("Sending handshake to " + address + "...");
-        socket.send(new DatagramPacket(new byte[]{HANDSHAKE}, 1, address, port));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(HANDSHAKE);
+        writeInt(out, CAPACITY);
+        writeLong(out, epoch);
+        send(out, address, port);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(ByteBuffer.allocate(Integer.BYTES).putInt(value).array(), 0, Integer.BYTES);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        out.write(ByteBuffer.allocate(Long.BYTES).putLong(value).array(), 0, Long.BYTES);
+    }
+
+    private void send(ByteArrayOutputStream out, InetAddress address, int port) {
+        send(out, address, port, null, null);
+    }
+
+    private void send(ByteArrayOutputStream out, InetAddress address, int port, Runnable onDelivered, Runnable onFailure) {
+        transport.send(out.toByteArray(), out.size(), new InetSocketAddress(address, port), onDelivered, onFailure);
     }
 }
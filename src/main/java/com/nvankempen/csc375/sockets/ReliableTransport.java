@@ -0,0 +1,186 @@
+package com.nvankempen.csc375.sockets;
+
+import com.nvankempen.underscore.utils.tuples.Doublet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reliable delivery on top of {@link DatagramTransport}.
+ * Every message carries a request ID and is acknowledged by its receiver. Unacknowledged messages are sent again
+ * with exponential backoff, and given up on after a few attempts, in which case the sender is told through a
+ * callback. Receivers remember the IDs they recently delivered so retransmitted messages are only handled once.
+ * A message is only acknowledged once its handler returned: one that could not be handled is sent again, and
+ * eventually reported as undelivered. Every message must fit in a single packet, callers split larger ones.
+ * Ordering between messages is not guaranteed, the protocol above does not depend on it.
+ * <p>
+ * Packet loss can be simulated with the sudoku.loss system property, the probability of dropping any outgoing
+ * packet, acknowledgements included.
+ */
+final class ReliableTransport {
+
+    private static final byte DATA = 1;
+    private static final byte ACK = 2;
+
+    static final int HEADER_SIZE = 1 + Long.BYTES;
+
+    private static final long INITIAL_TIMEOUT = 50;
+    private static final int MAX_ATTEMPTS = 6;
+    private static final int REMEMBERED = 1 << 16;
+
+    private final DatagramTransport transport;
+    private final DatagramTransport.Handler handler;
+    private final int packetSize;
+    private final double loss;
+
+    // Start from a random ID so a restarted peer does not collide with the IDs it used before.
+    private final AtomicLong ids = new AtomicLong(ThreadLocalRandom.current().nextLong());
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // Messages recently received, mapped to whether their handler returned yet.
+    private final Map<Doublet<InetSocketAddress, Long>, Boolean> delivered = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Doublet<InetSocketAddress, Long>, Boolean> eldest) {
+            return size() > REMEMBERED;
+        }
+    });
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "socket-retransmit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final class Pending {
+        private final long id;
+        private final byte[] frame;
+        private final InetSocketAddress address;
+        private final Runnable onDelivered;
+        private final Runnable onFailure;
+        private int attempts = 0;
+
+        private Pending(long id, byte[] frame, InetSocketAddress address, Runnable onDelivered, Runnable onFailure) {
+            this.id = id;
+            this.frame = frame;
+            this.address = address;
+            this.onDelivered = onDelivered;
+            this.onFailure = onFailure;
+        }
+
+        private void transmit() {
+            if (!pending.containsKey(id)) return;
+
+            if (attempts == MAX_ATTEMPTS) {
+                pending.remove(id);
+                System.out.println("No acknowledgement from " + address + ", giving up.");
+                if (onFailure != null) onFailure.run();
+                return;
+            }
+
+            try {
+                raw(ByteBuffer.wrap(frame), address);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            timer.schedule(this::transmit, INITIAL_TIMEOUT << attempts++, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    ReliableTransport(int port, int packetSize, int threads, DatagramTransport.Handler handler) throws IOException {
+        this.handler = handler;
+        this.packetSize = packetSize;
+        this.loss = Double.parseDouble(System.getProperty("sudoku.loss", "0"));
+        // One spare byte tells datagrams that were truncated apart from the ones that exactly fit.
+        this.transport = new DatagramTransport(port, HEADER_SIZE + packetSize + 1, threads, this::receive);
+    }
+
+    int getPort() throws IOException {
+        return transport.getPort();
+    }
+
+    void send(byte[] data, int length, InetSocketAddress address, Runnable onFailure) {
+        send(data, length, address, null, onFailure);
+    }
+
+    /**
+     * Sends the message until it is acknowledged.
+     *
+     * @param onDelivered Called once the message is acknowledged. May be null.
+     * @param onFailure   Called if the message could not be delivered after every attempt. May be null.
+     * @throws IllegalArgumentException If the message does not fit in a packet.
+     */
+    void send(byte[] data, int length, InetSocketAddress address, Runnable onDelivered, Runnable onFailure) {
+        if (length > packetSize)
+            throw new IllegalArgumentException("A " + length + " byte message does not fit in a " + packetSize + " byte packet");
+
+        final long id = ids.incrementAndGet();
+
+        final byte[] frame = new byte[HEADER_SIZE + length];
+        ByteBuffer.wrap(frame).put(DATA).putLong(id).put(data, 0, length);
+
+        final Pending message = new Pending(id, frame, address, onDelivered, onFailure);
+        pending.put(id, message);
+        synchronized (message) {
+            message.transmit();
+        }
+    }
+
+    private void receive(ByteBuffer buffer, InetSocketAddress address) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) return;
+
+        // Left unacknowledged, the sender reports it as undelivered.
+        if (buffer.remaining() > HEADER_SIZE + packetSize) {
+            System.out.println("Dropping oversized packet from: " + address);
+            return;
+        }
+
+        final byte type = buffer.get();
+        final long id = buffer.getLong();
+
+        if (type == ACK) {
+            final Pending message = pending.remove(id);
+            if (message != null && message.onDelivered != null) message.onDelivered.run();
+        } else if (type == DATA) {
+            final Doublet<InetSocketAddress, Long> key = new Doublet<>(address, id);
+            final Boolean handled = delivered.putIfAbsent(key, false);
+
+            if (handled == null) {
+                try {
+                    if (buffer.hasRemaining()) handler.handle(buffer, address);
+                } catch (IOException | RuntimeException e) {
+                    delivered.remove(key);
+                    throw e;
+                }
+
+                delivered.put(key, true);
+            } else if (!handled) {
+                // A copy is still being handled, its acknowledgement is sent once it is done.
+                return;
+            }
+
+            final ByteBuffer ack = ByteBuffer.allocate(HEADER_SIZE).put(ACK).putLong(id);
+            ack.flip();
+            raw(ack, address);
+        }
+    }
+
+    private void raw(ByteBuffer buffer, InetSocketAddress address) throws IOException {
+        if (loss > 0 && ThreadLocalRandom.current().nextDouble() < loss) return;
+        transport.send(buffer, address);
+    }
+
+    void close() throws IOException {
+        timer.shutdownNow();
+        transport.close();
+    }
+}
@@ -0,0 +1,63 @@
+package com.nvankempen.csc375.sockets;
+
+import com.nvankempen.csc375.SudokuSolver;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A task sent to a helper, along with the pool to run it in if the helper never answers.
+ */
+final class Shipment {
+    private final Helper helper;
+    private final long batch;
+    private final SudokuSolver task;
+    private final ForkJoinPool pool;
+    private final long sent = System.nanoTime();
+    private volatile boolean delivered = false;
+
+    /**
+     * @param batch The request ID of the first task of the message this task was sent in.
+     */
+    Shipment(Helper helper, long batch, SudokuSolver task, ForkJoinPool pool) {
+        this.helper = helper;
+        this.batch = batch;
+        this.task = task;
+        this.pool = pool;
+    }
+
+    Helper helper() {
+        return helper;
+    }
+
+    long batch() {
+        return batch;
+    }
+
+    SudokuSolver task() {
+        return task;
+    }
+
+    /**
+     * Called once the helper acknowledged the message this task was sent in. It then knows about the task until its
+     * results were delivered or given up on.
+     */
+    void deliver() {
+        delivered = true;
+    }
+
+    boolean isDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Runs the task locally, after its helper was lost or could not take it.
+     */
+    void reschedule() {
+        task.unclaim();
+        pool.execute(task);
+    }
+
+    long elapsed() {
+        return System.nanoTime() - sent;
+    }
+}
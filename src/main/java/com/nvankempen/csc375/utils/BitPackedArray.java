@@ -58,21 +58,31 @@ public final class BitPackedArray {
     public void set(int index, long value) {
         if (index < 0 || index >= n)
             throw new ArrayIndexOutOfBoundsException(index);
-        if (value < 0 || value >= (1L << k))
+        if (value < 0 || (value >>> k) != 0)
             throw new IllegalArgumentException(value + " cannot be stored with only " + k + " bits");
 
-        for (int i = 0; i < k; ++i) {
-            final int j = i + index * k;
-            final int p = j >>> 6;
-            final int q = j & 63;
-
-            if ((data[p] & (1L << q)) != 0) {
-                if ((value & (1L << i)) == 0)
-                    data[p] &= ~(1L << q);
-            } else {
-                if ((value & (1L << i)) != 0)
-                    data[p] |= 1L << q;
-            }
+        setUnchecked(index, value);
+    }
+
+    /**
+     * Same as {@link #set(int, long)}, without any bounds or value checks.
+     * Only meant for trusted callers that already guarantee 0 &lt;= index &lt; n and 0 &lt;= value &lt; 2^k.
+     *
+     * @param index The index to update.
+     * @param value The value to store.
+     */
+    public void setUnchecked(int index, long value) {
+        final long mask = (1L << k) - 1;
+        final int j = index * k;
+        final int p = j >>> 6;
+        final int q = j & 63;
+
+        data[p] = (data[p] & ~(mask << q)) | (value << q);
+
+        // The value spans two words, write the high bits to the next one.
+        if (q + k > Long.SIZE) {
+            final int r = Long.SIZE - q;
+            data[p + 1] = (data[p + 1] & ~(mask >>> r)) | (value >>> r);
         }
     }
 
@@ -86,18 +96,160 @@ public final class BitPackedArray {
         if (index < 0 || index >= n)
             throw new ArrayIndexOutOfBoundsException(index);
 
-        long value = 0L;
+        return getUnchecked(index);
+    }
+
+    /**
+     * Same as {@link #get(int)}, without any bounds check.
+     * Only meant for trusted callers that already guarantee 0 &lt;= index &lt; n.
+     *
+     * @param index The index to retrieve.
+     * @return The value that was stored at that index.
+     */
+    public long getUnchecked(int index) {
+        final long mask = (1L << k) - 1;
+        final int j = index * k;
+        final int p = j >>> 6;
+        final int q = j & 63;
+
+        long value = data[p] >>> q;
 
-        for (int i = 0; i < k; ++i) {
-            final int j = i + index * k;
-            final int p = j >>> 6;
-            final int q = j & 63;
+        // The value spans two words, read the high bits from the next one.
+        if (q + k > Long.SIZE)
+            value |= data[p + 1] << (Long.SIZE - q);
+
+        return value & mask;
+    }
 
-            if ((data[p] & (1L << q)) != 0)
-                value |= 1L << i;
+    /**
+     * Sets every element in the range [from, to) to the given value.
+     *
+     * @param from  The first index to update, inclusive.
+     * @param to    The last index to update, exclusive.
+     * @param value The value to store.
+     */
+    public void fill(int from, int to, long value) {
+        if (from < 0 || to > n || from > to)
+            throw new ArrayIndexOutOfBoundsException("[" + from + ", " + to + ")");
+        if (value < 0 || (value >>> k) != 0)
+            throw new IllegalArgumentException(value + " cannot be stored with only " + k + " bits");
+
+        if (from == 0 && to == n && value == 0) {
+            Arrays.fill(data, 0L);
+            return;
         }
 
-        return value;
+        for (int i = from; i < to; ++i)
+            setUnchecked(i, value);
+    }
+
+    /**
+     * Copies length elements from the source array, starting at srcPos, into this array, starting at destPos.
+     * Both arrays must use the same amount of bits per element.
+     *
+     * @param src     The array to copy from.
+     * @param srcPos  The first index to read in the source array.
+     * @param destPos The first index to write in this array.
+     * @param length  The number of elements to copy.
+     */
+    public void copyRange(BitPackedArray src, int srcPos, int destPos, int length) {
+        if (src.k != k)
+            throw new IllegalArgumentException("Cannot copy " + src.k + "-bit elements into a " + k + "-bit array");
+        if (length < 0 || srcPos < 0 || destPos < 0 || srcPos + length > src.n || destPos + length > n)
+            throw new ArrayIndexOutOfBoundsException();
+
+        // Same alignment on both sides, the bulk of the copy can be done one word at a time.
+        if (srcPos == destPos && src != this) {
+            final int start = srcPos * k;
+            final int end = (srcPos + length) * k;
+            final int first = (start + 63) >>> 6;
+            final int last = end >>> 6;
+
+            if (first < last) {
+                System.arraycopy(src.data, first, data, first, last - first);
+
+                for (int i = srcPos; i < srcPos + length; ++i) {
+                    final int j = i * k;
+                    if (j < first * Long.SIZE || j + k > last * Long.SIZE)
+                        setUnchecked(i, src.getUnchecked(i));
+                }
+
+                return;
+            }
+        }
+
+        if (src == this && srcPos < destPos) {
+            for (int i = length - 1; i >= 0; --i)
+                setUnchecked(destPos + i, src.getUnchecked(srcPos + i));
+        } else {
+            for (int i = 0; i < length; ++i)
+                setUnchecked(destPos + i, src.getUnchecked(srcPos + i));
+        }
+    }
+
+    /**
+     * Checks whether the first length elements of both arrays are equal.
+     *
+     * @param other  The array to compare to.
+     * @param length The number of elements to compare.
+     * @return true if both arrays hold the same first length elements.
+     */
+    public boolean prefixEquals(BitPackedArray other, int length) {
+        if (length < 0 || length > n || length > other.n)
+            throw new ArrayIndexOutOfBoundsException(length);
+        if (other.k != k) return false;
+
+        final int bits = length * k;
+        final int words = bits >>> 6;
+
+        for (int i = 0; i < words; ++i)
+            if (data[i] != other.data[i]) return false;
+
+        final int rest = bits & 63;
+        if (rest == 0) return true;
+
+        final long mask = (1L << rest) - 1;
+        return (data[words] & mask) == (other.data[words] & mask);
+    }
+
+    /**
+     * Persistent version of {@link #set(int, long)}: this array is left untouched and a copy holding the new value
+     * is returned instead. Only the backing words are cloned, so this costs O(n * k / 64).
+     *
+     * @param index The index to update.
+     * @param value The value to store.
+     * @return A new array, equal to this one except at the given index.
+     */
+    public BitPackedArray with(int index, long value) {
+        if (index < 0 || index >= n)
+            throw new ArrayIndexOutOfBoundsException(index);
+        if (value < 0 || (value >>> k) != 0)
+            throw new IllegalArgumentException(value + " cannot be stored with only " + k + " bits");
+
+        final BitPackedArray copy = copy();
+        copy.setUnchecked(index, value);
+        return copy;
+    }
+
+    /**
+     * @return A copy of this array, which does not share any storage with it.
+     */
+    public BitPackedArray copy() {
+        return new BitPackedArray(n, k, data.clone());
+    }
+
+    /**
+     * @return The number of elements in the array.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * @return The amount of bits allocated for each element.
+     */
+    public int bits() {
+        return k;
     }
 
     @Override
@@ -128,8 +280,15 @@ public final class BitPackedArray {
         return new String(builder);
     }
 
+    /**
+     * @return The number of bytes {@link #serialize(OutputStream)} writes.
+     */
+    public int serializedSize() {
+        return Integer.BYTES * 2 + Long.BYTES * data.length;
+    }
+
     public void serialize(OutputStream out) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + Long.BYTES * data.length);
+        final ByteBuffer buffer = ByteBuffer.allocate(serializedSize());
 
         buffer.putInt(n);
         buffer.putInt(k);
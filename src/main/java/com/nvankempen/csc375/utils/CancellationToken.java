@@ -0,0 +1,17 @@
+package com.nvankempen.csc375.utils;
+
+/**
+ * Cooperative cancellation flag, shared by every task working on the same job.
+ * Long running loops are expected to poll {@link #isCancelled()} and stop as soon as it returns true.
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,29 @@
+package com.nvankempen.csc375.utils;
+
+/**
+ * A fixed capacity stack of primitive ints, meant to be allocated once and reused.
+ */
+public final class IntStack {
+    private final int[] data;
+    private int size;
+
+    public IntStack(int capacity) {
+        data = new int[capacity];
+    }
+
+    public void push(int value) {
+        data[size++] = value;
+    }
+
+    public int pop() {
+        return data[--size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
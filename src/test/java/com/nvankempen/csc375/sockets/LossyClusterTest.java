@@ -0,0 +1,106 @@
+package com.nvankempen.csc375.sockets;
+
+import com.nvankempen.csc375.Generator;
+import com.nvankempen.csc375.Sudoku;
+import com.nvankempen.csc375.SudokuSolver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Solves puzzles on a coordinator and two helpers over loopback, every node dropping outgoing packets at random with
+ * the sudoku.loss system property. Whatever gets lost, work or results, every tree must complete with the right
+ * answer.
+ */
+class LossyClusterTest {
+    private static final String LOSS = "0.3";
+    private static final int HELPERS = 2;
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static MainSocket coordinator;
+    private static final List<MainSocket> helpers = new ArrayList<>();
+    private static final Generator generator = new Generator(4, Generator.Difficulty.HARD, 375);
+
+    @BeforeAll
+    static void start() throws IOException, InterruptedException {
+        final String previous = System.getProperty("sudoku.loss");
+        System.setProperty("sudoku.loss", LOSS);
+
+        try {
+            coordinator = new MainSocket(0);
+
+            for (int k = 0; k < HELPERS; ++k) {
+                final MainSocket helper = new MainSocket(0);
+                helpers.add(helper);
+                helper.sendHandshake(InetAddress.getLoopbackAddress(), coordinator.getPort());
+            }
+        } finally {
+            if (previous == null) System.clearProperty("sudoku.loss");
+            else System.setProperty("sudoku.loss", previous);
+        }
+
+        // Handshakes are retransmitted like any other message, give them time to get through.
+        Thread.sleep(1000);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        for (final MainSocket helper : helpers) helper.close();
+        coordinator.close();
+    }
+
+    @Test
+    void solvesUnderLoss() {
+        for (int index = 0; index < 4; ++index) {
+            final Sudoku puzzle = generator.generate(index);
+            final Sudoku solution = assertTimeoutPreemptively(TIMEOUT, () -> new SudokuSolver(puzzle, coordinator).invoke());
+
+            assertNotNull(solution);
+            assertEquals(0, solution.remaining());
+            assertTrue(solution.isValid());
+            for (int i = 0; i < puzzle.size(); ++i)
+                for (int j = 0; j < puzzle.size(); ++j)
+                    if (puzzle.isSet(i, j)) assertEquals(puzzle.get(i, j), solution.get(i, j));
+        }
+    }
+
+    /**
+     * Without a solution to cut the search short, the tree only completes once every shipped subtree was answered.
+     */
+    @Test
+    void exhaustsUnderLoss() {
+        for (int index = 0; index < 4; ++index) {
+            final Sudoku puzzle = contradict(generator.generate(index));
+            final Sudoku expected = SudokuSolver.sequentialSolve(puzzle);
+            final Sudoku solution = assertTimeoutPreemptively(TIMEOUT, () -> new SudokuSolver(puzzle, coordinator).invoke());
+
+            assertEquals(expected == null, solution == null);
+        }
+    }
+
+    /**
+     * @return The given puzzle with its first empty cell set to a candidate its solution does not use there.
+     */
+    private static Sudoku contradict(Sudoku puzzle) {
+        final Sudoku solution = SudokuSolver.sequentialSolve(puzzle);
+
+        for (int i = 0; i < puzzle.size(); ++i) {
+            for (int j = 0; j < puzzle.size(); ++j) {
+                if (puzzle.isSet(i, j)) continue;
+
+                final long candidates = puzzle.candidates(i, j) & ~(1L << (solution.get(i, j) - 1));
+                if (candidates != 0) return puzzle.set(i, j, Long.numberOfTrailingZeros(candidates) + 1);
+            }
+        }
+
+        return puzzle;
+    }
+}